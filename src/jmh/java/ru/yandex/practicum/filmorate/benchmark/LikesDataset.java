@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ru.yandex.practicum.filmorate.utilities.recommendations.Matrix;
+
+import java.util.Random;
+
+/**
+ * Synthetic FILM_LIKES: every user likes about likesPerUser films, popularity of films is skewed
+ * (a few films collect most of the likes), ids start from 1 as in the database.
+ */
+class LikesDataset {
+    final int[] filmIds;
+    final int[] userIds;
+
+    LikesDataset(int filmsCount, int usersCount, int likesPerUser, long seed) {
+        Random random = new Random(seed);
+        int likesCount = usersCount * likesPerUser;
+        filmIds = new int[likesCount];
+        userIds = new int[likesCount];
+        for (int i = 0; i < likesCount; i++) {
+            filmIds[i] = 1 + (int) (filmsCount * Math.pow(random.nextDouble(), 3));
+            userIds[i] = 1 + i / likesPerUser;
+        }
+    }
+
+    Matrix toMatrix() {
+        Matrix matrix = new Matrix();
+        for (int i = 0; i < filmIds.length; i++) {
+            matrix.writeValue(filmIds[i], userIds[i], 1);
+        }
+        matrix.getValuesCount();
+        return matrix;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.utilities.recommendations.Matrix;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling a {@link Matrix} with all likes and compressing it, as FilmStorage.findLikesMatrix does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MatrixBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int films;
+
+    @Param({"10000", "100000", "1000000"})
+    private int users;
+
+    @Param({"20"})
+    private int likesPerUser;
+
+    private LikesDataset dataset;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        dataset = new LikesDataset(films, users, likesPerUser, 1);
+    }
+
+    @Benchmark
+    public Matrix writeValues() {
+        return dataset.toMatrix();
+    }
+}
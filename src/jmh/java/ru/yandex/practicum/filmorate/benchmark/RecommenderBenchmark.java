@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.utilities.recommendations.Matrix;
+import ru.yandex.practicum.filmorate.utilities.recommendations.Recommender;
+import ru.yandex.practicum.filmorate.utilities.recommendations.SimilarityModel;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of a {@link Recommender} (column averages and row norms), a full parallel build
+ * of the similarity model and exact recommendations for random users.
+ * Large sizes take long, pick sizes with -p, e.g. -Djmh.args="-f 1 -p films=1000 -p users=10000".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RecommenderBenchmark {
+    @Param({"1000", "10000", "100000"})
+    private int films;
+
+    @Param({"10000", "100000", "1000000"})
+    private int users;
+
+    @Param({"20"})
+    private int likesPerUser;
+
+    private Matrix matrix;
+    private Recommender recommender;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        matrix = new LikesDataset(films, users, likesPerUser, 1).toMatrix();
+        recommender = new Recommender(matrix, true);
+        random = new Random(2);
+    }
+
+    @Benchmark
+    public Recommender construct() {
+        return new Recommender(matrix, true);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public SimilarityModel buildSimilarityModel() {
+        return recommender.buildSimilarityModel(50, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public List<Integer> getRecommendations() {
+        return recommender.getRecommendations(1 + random.nextInt(users), Optional.of(10));
+    }
+}
@@ -1,16 +1,27 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.ImportReport;
 import ru.yandex.practicum.filmorate.model.SearchBy;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.ImportService;
+import ru.yandex.practicum.filmorate.service.SuggestService;
 import ru.yandex.practicum.filmorate.model.SortBy;
 import ru.yandex.practicum.filmorate.validation.Validator;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 @Slf4j
@@ -18,16 +29,33 @@ import javax.validation.Valid;
 @RequestMapping("/films")
 public class FilmsController {
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final ImportService importService;
+    private final SuggestService suggestService;
 
     @Autowired
-    public FilmsController(FilmService filmService) {
+    public FilmsController(FilmService filmService, ObjectMapper objectMapper, ImportService importService,
+                           SuggestService suggestService) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.importService = importService;
+        this.suggestService = suggestService;
+    }
+
+    @GetMapping(params = {"!after", "!limit"})
+    public void findAll(@RequestParam(defaultValue = "full", name = "view") FilmView view,
+                        HttpServletResponse response) throws IOException {
+        log.debug("Получен запрос GET /films?view={}", view);
+        JsonArrayWriter.write(response, objectMapper.writerWithView(view.getJsonView()),
+                (Consumer<Film> action) -> filmService.exportAllFilms(view, action));
     }
 
     @GetMapping
-    public Collection<Film> findAll() {
-        log.debug("Получен запрос GET /films");
-        return filmService.getAllFilms();
+    public MappingJacksonValue findPage(@RequestParam(defaultValue = "0", name = "after") int afterId,
+                                        @RequestParam(defaultValue = "100", name = "limit") int limit,
+                                        @RequestParam(defaultValue = "full", name = "view") FilmView view) {
+        log.debug("Получен запрос GET /films?after={}&limit={}&view={}", afterId, limit, view);
+        return withView(filmService.getFilmsPage(afterId, limit, view), view);
     }
 
     @GetMapping("/{id}")
@@ -37,9 +65,10 @@ public class FilmsController {
     }
 
     @GetMapping("/popular")
-    public Collection<Film> getMostPopularFilms(@RequestParam(defaultValue = "10", name = "count", required = false) int limit,
-                                                @RequestParam(name = "genreId", required = false) Optional<Integer> genreId,
-                                                @RequestParam(name = "year", required = false) Optional<Integer> year) {
+    public MappingJacksonValue getMostPopularFilms(@RequestParam(defaultValue = "10", name = "count", required = false) int limit,
+                                                   @RequestParam(name = "genreId", required = false) Optional<Integer> genreId,
+                                                   @RequestParam(name = "year", required = false) Optional<Integer> year,
+                                                   @RequestParam(defaultValue = "full", name = "view") FilmView view) {
         String request =
                 "Получен запрос GET /films/popular/count=" +
                 limit +
@@ -47,7 +76,7 @@ public class FilmsController {
                 (year.isPresent() ? "&year=" + year : "");
 
         log.debug(request);
-        return filmService.getTopNMostPopular(limit, genreId, year);
+        return withView(filmService.getTopNMostPopular(limit, genreId, year, view), view);
     }
 
     @GetMapping("/common")
@@ -57,9 +86,10 @@ public class FilmsController {
     }
 
     @GetMapping("/director/{directorId}")
-    public Collection<Film> getFilmsByDirector(@PathVariable int directorId, @RequestParam SortBy sortBy) {
-        log.debug("получен запрос GET /films/director/{directorId}?sortBy={}", sortBy);
-        return filmService.getFilmsByDirector(directorId, sortBy);
+    public MappingJacksonValue getFilmsByDirector(@PathVariable int directorId, @RequestParam SortBy sortBy,
+                                                  @RequestParam(defaultValue = "full", name = "view") FilmView view) {
+        log.debug("получен запрос GET /films/director/{directorId}?sortBy={}&view={}", sortBy, view);
+        return withView(filmService.getFilmsByDirector(directorId, sortBy, view), view);
     }
 
     @PostMapping
@@ -69,6 +99,18 @@ public class FilmsController {
         return filmService.add(film);
     }
 
+    @PostMapping(value = "/import", consumes = "application/x-ndjson")
+    public ImportReport importFilms(HttpServletRequest request) throws IOException {
+        log.debug("Получен запрос POST /films/import");
+        return importService.importFilms(request.getReader());
+    }
+
+    @PostMapping(value = "/likes/import", consumes = {"application/x-ndjson", "text/csv"})
+    public ImportReport importLikes(HttpServletRequest request) throws IOException {
+        log.debug("Получен запрос POST /films/likes/import");
+        return importService.importLikes(request.getReader(), request.getContentType().startsWith("text/csv"));
+    }
+
     @PutMapping
     public Film update(@Valid @RequestBody Film newFilm, BindingResult bindingResult) {
         log.debug("Получен запрос PUT /films");
@@ -89,15 +131,29 @@ public class FilmsController {
     }
 
     @GetMapping("/search")
-    public Collection<Film> searchFilm(@RequestParam String query, @RequestParam Set<SearchBy> by) {
-        log.debug("Получен запрос GET /films/search?query={}&by={}", query, by);
-        return filmService.searchFilm(query, by);
+    public MappingJacksonValue searchFilm(@RequestParam String query, @RequestParam Set<SearchBy> by,
+                                          @RequestParam(defaultValue = "100", name = "limit") int limit,
+                                          @RequestParam(defaultValue = "full", name = "view") FilmView view) {
+        log.debug("Получен запрос GET /films/search?query={}&by={}&limit={}&view={}", query, by, limit, view);
+        return withView(filmService.searchFilm(query, by, limit, view), view);
     }
 
+    @GetMapping("/suggest")
+    public List<Suggestion> suggest(@RequestParam String prefix,
+                                    @RequestParam(defaultValue = "10", name = "count") int count) {
+        log.debug("Получен запрос GET /films/suggest?prefix={}&count={}", prefix, count);
+        return suggestService.suggest(prefix, count);
+    }
 
     @DeleteMapping("/{filmId}")
     public void delete(@PathVariable int filmId) {
         log.debug("Получен запрос DELETE /films/{}", filmId);
         filmService.deleteFilmById(filmId);
     }
+
+    private static MappingJacksonValue withView(Collection<Film> films, FilmView view) {
+        MappingJacksonValue value = new MappingJacksonValue(films);
+        value.setSerializationView(view.getJsonView());
+        return value;
+    }
 }
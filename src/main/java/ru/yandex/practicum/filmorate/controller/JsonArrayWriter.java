@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Writes values to the response as a JSON array while the source hands them out,
+ * so an export of a whole table does not hold the table in memory.
+ */
+final class JsonArrayWriter {
+    private JsonArrayWriter() {
+    }
+
+    static <T> void write(HttpServletResponse response, ObjectMapper objectMapper,
+                          Consumer<Consumer<T>> source) throws IOException {
+        write(response, objectMapper.writer(), source);
+    }
+
+    static <T> void write(HttpServletResponse response, ObjectWriter writer,
+                          Consumer<Consumer<T>> source) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (JsonGenerator generator = writer.createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            source.accept(value -> {
+                try {
+                    writer.writeValue(generator, value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.validation.BindingResult;
@@ -7,28 +8,51 @@ import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.FeedEvent;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportReport;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.ImportService;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.validation.Validator;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Optional;
 
 @Slf4j
 @RestController
 @RequestMapping("/users")
 public class UsersController {
     private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final ImportService importService;
 
     @Autowired
-    public UsersController(UserService userService) {
+    public UsersController(UserService userService, ObjectMapper objectMapper, ImportService importService) {
         this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.importService = importService;
     }
 
-    @GetMapping
-    public Collection<User> findAll() {
+    @GetMapping(params = {"!after", "!limit"})
+    public void findAll(HttpServletResponse response) throws IOException {
         log.debug("Получен запрос GET /users");
-        return userService.getAllUsers();
+        JsonArrayWriter.write(response, objectMapper, userService::exportAllUsers);
+    }
+
+    @PostMapping(value = "/import", consumes = "application/x-ndjson")
+    public ImportReport importUsers(HttpServletRequest request) throws IOException {
+        log.debug("Получен запрос POST /users/import");
+        return importService.importUsers(request.getReader());
+    }
+
+    @GetMapping
+    public Collection<User> findPage(@RequestParam(defaultValue = "0", name = "after") int afterId,
+                                     @RequestParam(defaultValue = "100", name = "limit") int limit) {
+        log.debug("Получен запрос GET /users?after={}&limit={}", afterId, limit);
+        return userService.getUsersPage(afterId, limit);
     }
 
     @GetMapping("/{id}")
@@ -50,9 +74,10 @@ public class UsersController {
     }
 
     @GetMapping("/{id}/recommendations")
-    public Collection<Film> getRecommendations(@PathVariable int id) {
-        log.debug("Получен запрос GET /users/{}/recommendations", id);
-        return userService.getRecommendations(id);
+    public Collection<Film> getRecommendations(@PathVariable int id,
+                                               @RequestParam(name = "count", required = false) Optional<Integer> count) {
+        log.debug("Получен запрос GET /users/{}/recommendations{}", id, count.map(c -> "?count=" + c).orElse(""));
+        return userService.getRecommendations(id, count);
     }
 
 
@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonView;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -16,7 +18,11 @@ public class Film {
     public static final int MAX_DESCRIPTION_SIZE = 200;
     public static final String CINEMA_BIRTHDAY = "28.12.1895";
     private int id;
-    private Set<Integer> whoLikedUserIds = new HashSet<>();
+    /*
+     * null when a request leaves likes out, an update then keeps the stored likes
+     */
+    @JsonView(FilmView.Full.class)
+    private Set<Integer> whoLikedUserIds;
 
     @NotBlank(message = "Имя фильма обязательно")
     private String name;
@@ -35,16 +41,31 @@ public class Film {
     private Set<Director> directors = new HashSet<>();
     private Set<Genre> genres = new LinkedHashSet<>();
 
+    /*
+     * set only for films read without their likes, otherwise the count is the size of whoLikedUserIds
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Integer likesCount;
+
     public void addLikeFromUser(int userId) {
+        if (whoLikedUserIds == null) {
+            whoLikedUserIds = new HashSet<>();
+        }
         whoLikedUserIds.add(userId);
     }
 
     public void deleteLikeFromUser(int userId) {
-        whoLikedUserIds.remove(userId);
+        if (whoLikedUserIds != null) {
+            whoLikedUserIds.remove(userId);
+        }
     }
 
     public int getLikesCount() {
-        return whoLikedUserIds.size();
+        return likesCount == null ? getWhoLikedUserIds().size() : likesCount;
+    }
+
+    public boolean hasWhoLikedUserIds() {
+        return whoLikedUserIds != null;
     }
 
     public Set<Genre> getGenres() {
@@ -55,7 +76,7 @@ public class Film {
     }
 
     public Set<Integer> getWhoLikedUserIds() {
-        return Collections.unmodifiableSet(whoLikedUserIds);
+        return whoLikedUserIds == null ? Collections.emptySet() : Collections.unmodifiableSet(whoLikedUserIds);
     }
 
 }
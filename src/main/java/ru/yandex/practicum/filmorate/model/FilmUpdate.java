@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * An updated film with the ids of the users whose likes the update added and removed.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FilmUpdate {
+    private Film film;
+    private List<Integer> addedLikeUserIds;
+    private List<Integer> removedLikeUserIds;
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * How much of a film a list returns: the summary has the likes count, but not ids of the users who liked the film.
+ */
+public enum FilmView {
+    full(Full.class), summary(Summary.class);
+
+    private final Class<?> jsonView;
+
+    FilmView(Class<?> jsonView) {
+        this.jsonView = jsonView;
+    }
+
+    public Class<?> getJsonView() {
+        return jsonView;
+    }
+
+    public boolean hasLikes() {
+        return this == full;
+    }
+
+    public interface Summary {
+    }
+
+    public interface Full extends Summary {
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportReport {
+    private long rowsRead;
+    private long rowsImported;
+    private long millis;
+    private long rowsPerSecond;
+
+    public static ImportReport of(long rowsRead, long rowsImported, long millis) {
+        return new ImportReport(rowsRead, rowsImported, millis, rowsRead * 1000 / Math.max(millis, 1));
+    }
+}
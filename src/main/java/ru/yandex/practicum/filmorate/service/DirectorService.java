@@ -14,9 +14,14 @@ import java.util.Collection;
 public class DirectorService {
     private static final String DIRECTOR_NOT_FOUND_MSG = "Режиссер c id=%d не найден";
     private final DirectorStorage directorDbStorage;
+    private final SearchService searchService;
+    private final SuggestService suggestService;
 
-    public DirectorService(DirectorDbStorage directorDbStorage) {
+    public DirectorService(DirectorDbStorage directorDbStorage, SearchService searchService,
+                           SuggestService suggestService) {
         this.directorDbStorage = directorDbStorage;
+        this.searchService = searchService;
+        this.suggestService = suggestService;
     }
 
     public Collection<Director> getAllDirectors() {
@@ -25,8 +30,11 @@ public class DirectorService {
     }
 
     public Director addDirector (Director director) {
-        log.debug("Режиссер {} {} добавлен", director.getId(), director.getName());
-        return directorDbStorage.save(director);
+        Director savedDirector = directorDbStorage.save(director);
+        searchService.onDirectorAdded(savedDirector);
+        suggestService.onFilmsChanged();
+        log.debug("Режиссер {} {} добавлен", savedDirector.getId(), savedDirector.getName());
+        return savedDirector;
     }
 
     public Director findById (int id) {
@@ -41,6 +49,8 @@ public class DirectorService {
         if(!directorDbStorage.deleteById(id)) {
             throw new DirectorNotFoundException(String.format(DIRECTOR_NOT_FOUND_MSG, id));
         }
+        searchService.onDirectorDeleted(id);
+        suggestService.onFilmsChanged();
         log.debug("Режиссер {} удален", id);
     }
 
@@ -48,6 +58,8 @@ public class DirectorService {
         Director dir = directorDbStorage.update(director)
                 .orElseThrow(() ->
                         new DirectorNotFoundException(String.format(DIRECTOR_NOT_FOUND_MSG, director.getId())));
+        searchService.onDirectorUpdated(dir);
+        suggestService.onFilmsChanged();
         log.debug("Режиссер {} обновлен", dir.getId());
         return dir;
     }
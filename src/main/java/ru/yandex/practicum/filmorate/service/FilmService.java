@@ -6,6 +6,7 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.DirectorNotFoundException;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.event.FeedEventStorage;
@@ -13,8 +14,10 @@ import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -25,28 +28,49 @@ public class FilmService {
     private final UserStorage userStorage;
     private final DirectorStorage directorStorage;
     private final FeedEventStorage feedEventStorage;
+    private final RecommendationService recommendationService;
+    private final PopularityService popularityService;
+    private final SearchService searchService;
+    private final SuggestService suggestService;
 
     public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
                        @Qualifier("userDbStorage") UserStorage userStorage,
                        DirectorStorage directorStorage,
-                       FeedEventStorage feedEventStorage) {
+                       FeedEventStorage feedEventStorage,
+                       RecommendationService recommendationService,
+                       PopularityService popularityService,
+                       SearchService searchService,
+                       SuggestService suggestService) {
         this.filmStorage = filmStorage;
         this.userStorage =  userStorage;
         this.directorStorage = directorStorage;
         this.feedEventStorage = feedEventStorage;
+        this.recommendationService = recommendationService;
+        this.popularityService = popularityService;
+        this.searchService = searchService;
+        this.suggestService = suggestService;
     }
 
     public Film add(Film film) {
         Film savedFilm = filmStorage.save(film);
+        popularityService.onFilmAdded(savedFilm);
+        searchService.onFilmAdded(savedFilm);
+        suggestService.onFilmsChanged();
         log.info("Фильм {} успешно добавлен и ему присвоен id = {}", savedFilm.getName(), savedFilm.getId());
         return savedFilm;
     }
 
     public Film update(Film newFilm) {
         int id = newFilm.getId();
-        Film updatedFilm = filmStorage.update(newFilm)
+        FilmUpdate filmUpdate = filmStorage.update(newFilm)
                 .orElseThrow(() ->
                         new FilmNotFoundException(String.format(FILM_NOT_EXISTS_MSG, id)));
+        Film updatedFilm = filmUpdate.getFilm();
+        filmUpdate.getRemovedLikeUserIds().forEach(userId -> recommendationService.onLikeRemoved(id, userId));
+        filmUpdate.getAddedLikeUserIds().forEach(userId -> recommendationService.onLikeAdded(id, userId));
+        popularityService.onFilmUpdated(updatedFilm);
+        searchService.onFilmUpdated(updatedFilm);
+        suggestService.onFilmsChanged();
         log.debug("Фильм с id = {} успешно обновлен", id);
         return updatedFilm;
     }
@@ -59,12 +83,12 @@ public class FilmService {
         return film;
     }
 
-    public Collection<Film> getFilmsByDirector(int directorId, SortBy sortBy) {
+    public Collection<Film> getFilmsByDirector(int directorId, SortBy sortBy, FilmView view) {
         if (directorStorage.findById(directorId).isEmpty()) {
             throw new DirectorNotFoundException(String.format("Режиссер %d не найден", directorId));
         }
         log.debug("Список всех фильмов режиссера {} успешно отправлен", directorId);
-        return filmStorage.getFilmsByDirector(directorId, sortBy);
+        return filmStorage.getFilmsByDirector(directorId, sortBy, view);
     }
 
     public Collection<Film> getAllFilms() {
@@ -72,10 +96,27 @@ public class FilmService {
         return filmStorage.findAll();
     }
 
+    public Collection<Film> getFilmsPage(int afterId, int limit, FilmView view) {
+        if (limit <= 0) {
+            throw new ValidationException("Размер страницы должен быть положительным");
+        }
+        log.debug("Страница фильмов после id = {} успешно отправлена", afterId);
+        return filmStorage.findPage(afterId, limit, view);
+    }
+
+    public void exportAllFilms(FilmView view, Consumer<Film> action) {
+        filmStorage.forEach(view, action);
+        log.debug("Список всех фильмов успешно выгружен");
+    }
+
     public void deleteFilmById(int id) {
         if (!filmStorage.deleteById(id)) {
             throw new FilmNotFoundException(String.format(FILM_NOT_EXISTS_MSG, id));
         }
+        recommendationService.onFilmDeleted(id);
+        popularityService.onFilmDeleted(id);
+        searchService.onFilmDeleted(id);
+        suggestService.onFilmsChanged();
         log.debug("Фильм с id = {} успешно удален", id);
     }
 
@@ -84,13 +125,16 @@ public class FilmService {
         if (filmStorage.addLike(filmId, userId)) {
             log.debug("Лайк от пользователя с id = {} успешно добавлен в фильм с id = {}", userId, filmId);
             feedEventStorage.save(userId, EventType.LIKE, Operation.ADD, filmId);
+            recommendationService.onLikeAdded(filmId, userId);
+            popularityService.onLikeAdded(filmId);
+            suggestService.onLikesChanged();
             return;
         }
         log.debug("Не удалось добавить лайк от пользователя с id = {} в фильм с id = {}", userId, filmId);
     }
 
     private void ifUserNotExistsThrowNotFoundException(int userId) {
-        if (userStorage.findById(userId).isEmpty()) {
+        if (!userStorage.existsById(userId)) {
                 throw new UserNotFoundException(String.format(USER_NOT_EXISTS_MSG, userId));
         }
     }
@@ -100,26 +144,33 @@ public class FilmService {
         if (filmStorage.deleteLike(filmId, userId)) {
             log.debug("Лайк от пользователя с id = {} успешно удален из фильма с id = {}", userId, filmId);
             feedEventStorage.save(userId, EventType.LIKE, Operation.REMOVE, filmId);
+            recommendationService.onLikeRemoved(filmId, userId);
+            popularityService.onLikeRemoved(filmId);
+            suggestService.onLikesChanged();
             return;
         }
         log.debug("Не удалось удалить лайк от пользователя с id = {} в фильм с id = {}", userId, filmId);
     }
 
-    public Collection<Film> getTopNMostPopular(int limit, Optional<Integer> genreId, Optional<Integer> year) {
+    public Collection<Film> getTopNMostPopular(int limit, Optional<Integer> genreId, Optional<Integer> year,
+                                               FilmView view) {
+        if (limit <= 0) {
+            throw new ValidationException("Количество популярных фильмов должно быть положительным");
+        }
         log.debug("Топ {} фильмов успешно отправлен", limit);
-        return filmStorage.findTopNMostPopular(limit, genreId, year);
+        return popularityService.getTopNMostPopular(limit, genreId, year, view);
     }
 
-    public Collection<Film> searchFilm(String query, Set<SearchBy> by) {
-       if (by.size() == SearchBy.values().length) {
-           log.debug("Поиск '{}' по названиям фильмов и режиссерам", query);
-           return filmStorage.searchForFilmsByDirectorAndTitle (query);
-       }else if (by.contains(SearchBy.director)){
-           log.debug("Поиск '{}' по режиссерам", query);
-           return filmStorage.searchForFilmsByDirector (query);
-       }
-        log.debug("Поиск '{}' по названиям", query);
-        return filmStorage.searchForFilmsByTitle (query);
+    /*
+     * matches are ranked in the in-memory index, only the films kept by the limit are read
+     */
+    public Collection<Film> searchFilm(String query, Set<SearchBy> by, int limit, FilmView view) {
+        if (limit <= 0) {
+            throw new ValidationException("Размер результата поиска должен быть положительным");
+        }
+        List<Integer> filmIds = searchService.findFilmIds(query, by, limit);
+        log.debug("Поиск '{}' по {}: найдено фильмов {}", query, by, filmIds.size());
+        return filmStorage.findByIds(filmIds, view);
     }
 
     public Collection<Film> getCommonFilms(int userId, int friendId) {
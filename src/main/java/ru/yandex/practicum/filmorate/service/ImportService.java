@@ -0,0 +1,252 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.event.FeedEventStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MpaStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Loads films, users and likes from NDJSON (likes also from CSV) in chunks: each chunk is written
+ * with JDBC batches in its own transaction, so a failed row stops the import after the chunks already saved.
+ * Rows that fail validation or name a missing MPA, genre or director are skipped and only counted.
+ */
+@Service
+@Slf4j
+public class ImportService {
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final MpaStorage mpaStorage;
+    private final GenreStorage genreStorage;
+    private final DirectorStorage directorStorage;
+    private final FeedEventStorage feedEventStorage;
+    private final PopularityService popularityService;
+    private final SearchService searchService;
+    private final SuggestService suggestService;
+    private final RecommendationService recommendationService;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int chunkSize;
+
+    public ImportService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                         @Qualifier("userDbStorage") UserStorage userStorage,
+                         MpaStorage mpaStorage,
+                         GenreStorage genreStorage,
+                         DirectorStorage directorStorage,
+                         FeedEventStorage feedEventStorage,
+                         PopularityService popularityService,
+                         SearchService searchService,
+                         SuggestService suggestService,
+                         RecommendationService recommendationService,
+                         TransactionTemplate transactionTemplate,
+                         ObjectMapper objectMapper,
+                         Validator validator,
+                         @Value("${filmorate.import.chunk-size:10000}") int chunkSize) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.mpaStorage = mpaStorage;
+        this.genreStorage = genreStorage;
+        this.directorStorage = directorStorage;
+        this.feedEventStorage = feedEventStorage;
+        this.popularityService = popularityService;
+        this.searchService = searchService;
+        this.suggestService = suggestService;
+        this.recommendationService = recommendationService;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportReport importFilms(Reader ndjson) {
+        Set<Integer> mpaIds = ids(mpaStorage.findAll(), Mpa::getId);
+        Set<Integer> genreIds = ids(genreStorage.findAll(), Genre::getId);
+        Set<Integer> directorIds = ids(directorStorage.findAll(), Director::getId);
+        Predicate<Film> isKnown = film -> film.getMpa() != null && mpaIds.contains(film.getMpa().getId()) &&
+                film.getGenres().stream().allMatch(genre -> genreIds.contains(genre.getId())) &&
+                film.getDirectors().stream().allMatch(director -> directorIds.contains(director.getId()));
+
+        return importChunks("фильмов", readJson(ndjson, Film.class), isKnown, filmStorage::saveAll, () -> {
+            popularityService.reload();
+            searchService.reload();
+            suggestService.onFilmsChanged();
+        });
+    }
+
+    public ImportReport importUsers(Reader ndjson) {
+        return importChunks("пользователей", readJson(ndjson, User.class), user -> true, users -> {
+            users.stream()
+                    .filter(user -> user.getName() == null || user.getName().isBlank())
+                    .forEach(user -> user.setName(user.getLogin()));
+            return userStorage.saveAll(users);
+        }, () -> {
+        });
+    }
+
+    /**
+     * Likes already stored or naming a missing film or user are skipped. A feed event is saved for each new like,
+     * popular films and the recommendation model are rebuilt once after the import, even a failed one.
+     */
+    public ImportReport importLikes(Reader source, boolean csv) {
+        Iterator<Like> likes = csv ? readCsvLikes(source) : readJson(source, Like.class);
+        return importChunks("лайков", likes, like -> true, chunk -> {
+            List<Like> addedLikes = filmStorage.addLikes(chunk);
+            long timestamp = Instant.now().toEpochMilli();
+            feedEventStorage.saveAll(addedLikes.stream()
+                    .map(like -> FeedEvent.builder()
+                            .userId(like.getUserId())
+                            .timestamp(timestamp)
+                            .eventType(EventType.LIKE.toString())
+                            .operation(Operation.ADD.toString())
+                            .entityId(like.getFilmId())
+                            .build())
+                    .collect(Collectors.toList()));
+            return addedLikes;
+        }, () -> {
+            popularityService.reload();
+            suggestService.onLikesChanged();
+            recommendationService.rebuildModelInBackground();
+        });
+    }
+
+    /*
+     * refresh updates what is kept in memory; it runs when any chunk has been committed, also when a later row fails
+     */
+    private <T> ImportReport importChunks(String rowsName, Iterator<T> rows, Predicate<T> isKnown,
+                                          Function<List<T>, List<?>> saveChunk, Runnable refresh) {
+        long start = System.currentTimeMillis();
+        long rowsRead = 0;
+        long rowsImported = 0;
+        boolean chunkSaved = false;
+        List<T> chunk = new ArrayList<>(chunkSize);
+        try {
+            while (rows.hasNext()) {
+                T row = rows.next();
+                rowsRead++;
+                if (validator.validate(row).isEmpty() && isKnown.test(row)) {
+                    chunk.add(row);
+                }
+                if (chunk.size() == chunkSize || !rows.hasNext()) {
+                    List<T> rowsToSave = chunk;
+                    rowsImported += Objects.requireNonNull(transactionTemplate.execute(status ->
+                            saveChunk.apply(rowsToSave).size()));
+                    chunkSaved = true;
+                    chunk = new ArrayList<>(chunkSize);
+                    log.debug("Импорт {}: прочитано {}, сохранено {}", rowsName, rowsRead, rowsImported);
+                }
+            }
+        } finally {
+            if (chunkSaved) {
+                refresh.run();
+            }
+        }
+        ImportReport report = ImportReport.of(rowsRead, rowsImported, System.currentTimeMillis() - start);
+        log.info("Импорт {} завершен: прочитано {}, сохранено {} за {} мс, {} строк в секунду",
+                rowsName, report.getRowsRead(), report.getRowsImported(), report.getMillis(),
+                report.getRowsPerSecond());
+        return report;
+    }
+
+    private <T> Iterator<T> readJson(Reader ndjson, Class<T> type) {
+        MappingIterator<T> values;
+        try {
+            values = objectMapper.readerFor(type).readValues(ndjson);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return values.hasNext();
+                } catch (RuntimeJsonMappingException e) {
+                    throw new ValidationException("Неверная строка импорта: " + e.getMessage());
+                }
+            }
+
+            @Override
+            public T next() {
+                try {
+                    return values.next();
+                } catch (RuntimeJsonMappingException e) {
+                    throw new ValidationException("Неверная строка импорта: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    /*
+     * lines are "filmId,userId", a first line that is not a number is taken for a header
+     */
+    private static Iterator<Like> readCsvLikes(Reader csv) {
+        BufferedReader lines = new BufferedReader(csv);
+        return new Iterator<>() {
+            private String line = readLine(true);
+
+            @Override
+            public boolean hasNext() {
+                return line != null;
+            }
+
+            @Override
+            public Like next() {
+                if (line == null) {
+                    throw new NoSuchElementException();
+                }
+                String[] values = line.split(",");
+                try {
+                    if (values.length != 2) {
+                        throw new NumberFormatException();
+                    }
+                    return new Like(Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()));
+                } catch (NumberFormatException e) {
+                    throw new ValidationException("Неверная строка импорта: " + line);
+                } finally {
+                    line = readLine(false);
+                }
+            }
+
+            private String readLine(boolean first) {
+                try {
+                    String next = lines.readLine();
+                    while (next != null && next.isBlank()) {
+                        next = lines.readLine();
+                    }
+                    if (first && next != null && !Character.isDigit(next.trim().charAt(0))) {
+                        return readLine(false);
+                    }
+                    return next;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static <T> Set<Integer> ids(Collection<T> values, Function<T, Integer> id) {
+        return values.stream().map(id).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,190 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.IndexGuard;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeIndex;
+import ru.yandex.practicum.filmorate.utilities.popularity.Leaderboard;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Popular films kept in memory: one board of all films and boards per genre, per release year
+ * and per genre and year, so the top of any of them is read without counting likes.
+ * Loaded from the storage at startup or on first use, then kept in sync by FilmService and UserService.
+ * A change of likes sets the count kept by LikeIndex instead of adding to the board,
+ * so a change replayed after a load does not count a like twice.
+ */
+@Service
+@Slf4j
+public class PopularityService {
+    private final FilmStorage filmStorage;
+    private final LikeIndex likeIndex;
+    private final Map<Integer, FilmPlace> places = new ConcurrentHashMap<>();
+    private final Leaderboard allFilms = new Leaderboard();
+    private final Map<Integer, Leaderboard> byGenre = new ConcurrentHashMap<>();
+    private final Map<Integer, Leaderboard> byYear = new ConcurrentHashMap<>();
+    private final Map<List<Integer>, Leaderboard> byGenreAndYear = new ConcurrentHashMap<>();
+    private final IndexGuard guard = new IndexGuard(this::readFilms, this::clear);
+
+    public PopularityService(@Qualifier("filmDbStorage") FilmStorage filmStorage, LikeIndex likeIndex) {
+        this.filmStorage = filmStorage;
+        this.likeIndex = likeIndex;
+    }
+
+    public Collection<Film> getTopNMostPopular(int limit, Optional<Integer> genreId, Optional<Integer> year,
+                                               FilmView view) {
+        List<Integer> filmIds = guard.read(() -> {
+            Leaderboard board;
+            if (genreId.isPresent() && year.isPresent()) {
+                board = byGenreAndYear.get(List.of(genreId.get(), year.get()));
+            } else if (genreId.isPresent()) {
+                board = byGenre.get(genreId.get());
+            } else if (year.isPresent()) {
+                board = byYear.get(year.get());
+            } else {
+                board = allFilms;
+            }
+            return board == null ? Collections.<Integer>emptyList() : board.getTop(limit);
+        });
+        if (filmIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return filmStorage.findByIds(filmIds, view);
+    }
+
+    public int getLikesCount(int filmId) {
+        return guard.read(() -> allFilms.getLikes(filmId));
+    }
+
+    public void onFilmAdded(Film film) {
+        guard.update(() -> putFilm(film, likeIndex.getLikesCount(film.getId())));
+    }
+
+    public void onFilmUpdated(Film film) {
+        guard.update(() -> {
+            removeFilm(film.getId());
+            putFilm(film, likeIndex.getLikesCount(film.getId()));
+        });
+    }
+
+    public void onFilmDeleted(int filmId) {
+        guard.update(() -> removeFilm(filmId));
+    }
+
+    public void onLikeAdded(int filmId) {
+        guard.update(() -> refreshLikes(filmId));
+    }
+
+    public void onLikeRemoved(int filmId) {
+        guard.update(() -> refreshLikes(filmId));
+    }
+
+    /**
+     * @param likedFilmIds films the user liked, taken before the deletion: their counts are set anew
+     */
+    public void onUserDeleted(int[] likedFilmIds) {
+        guard.update(() -> {
+            for (int filmId : likedFilmIds) {
+                refreshLikes(filmId);
+            }
+        });
+    }
+
+    /**
+     * Drops the boards, they are loaded anew on the next read; needed when likes are changed past the service.
+     */
+    public void reload() {
+        guard.reload();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            guard.load();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось загрузить популярные фильмы: {}", e.getMessage());
+        }
+    }
+
+    /*
+     * the summary view takes likes from FILMS.LIKES_COUNT, so no like ids are read
+     */
+    private Runnable readFilms() {
+        Map<Integer, FilmPlace> filmPlaces = new HashMap<>();
+        Map<Integer, Integer> likesCounts = new HashMap<>();
+        filmStorage.forEach(FilmView.summary, film -> {
+            filmPlaces.put(film.getId(), new FilmPlace(film));
+            likesCounts.put(film.getId(), film.getLikesCount());
+        });
+        log.debug("Загружены популярные фильмы: {}", filmPlaces.size());
+        return () -> filmPlaces.forEach((filmId, place) -> putPlace(filmId, place, likesCounts.get(filmId)));
+    }
+
+    private void clear() {
+        places.clear();
+        allFilms.clear();
+        byGenre.clear();
+        byYear.clear();
+        byGenreAndYear.clear();
+    }
+
+    private void putFilm(Film film, int likesCount) {
+        putPlace(film.getId(), new FilmPlace(film), likesCount);
+    }
+
+    private void putPlace(int filmId, FilmPlace place, int likesCount) {
+        places.put(filmId, place);
+        place.boards().forEach(board -> board.put(filmId, likesCount));
+    }
+
+    private void removeFilm(int filmId) {
+        FilmPlace place = places.remove(filmId);
+        if (place != null) {
+            place.boards().forEach(board -> board.remove(filmId));
+        }
+    }
+
+    private void refreshLikes(int filmId) {
+        FilmPlace place = places.get(filmId);
+        if (place != null) {
+            int likesCount = likeIndex.getLikesCount(filmId);
+            place.boards().forEach(board -> board.put(filmId, likesCount));
+        }
+    }
+
+    /*
+     * release year and genres of a film, they pick the boards the film is on
+     */
+    private class FilmPlace {
+        private final int year;
+        private final int[] genreIds;
+
+        FilmPlace(Film film) {
+            year = film.getReleaseDate().getYear();
+            genreIds = film.getGenres().stream()
+                    .mapToInt(Genre::getId)
+                    .toArray();
+        }
+
+        List<Leaderboard> boards() {
+            List<Leaderboard> boards = new ArrayList<>(2 + 2 * genreIds.length);
+            boards.add(allFilms);
+            boards.add(byYear.computeIfAbsent(year, key -> new Leaderboard()));
+            for (int genreId : genreIds) {
+                boards.add(byGenre.computeIfAbsent(genreId, key -> new Leaderboard()));
+                boards.add(byGenreAndYear.computeIfAbsent(List.of(genreId, year), key -> new Leaderboard()));
+            }
+            return boards;
+        }
+    }
+}
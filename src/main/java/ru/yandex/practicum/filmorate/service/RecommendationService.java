@@ -0,0 +1,329 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.utilities.recommendations.AlsTrainer;
+import ru.yandex.practicum.filmorate.utilities.recommendations.FactorModel;
+import ru.yandex.practicum.filmorate.utilities.recommendations.IncrementalRecommender;
+import ru.yandex.practicum.filmorate.utilities.recommendations.LikeStatistics;
+import ru.yandex.practicum.filmorate.utilities.recommendations.Matrix;
+import ru.yandex.practicum.filmorate.utilities.recommendations.MinHashIndex;
+import ru.yandex.practicum.filmorate.utilities.recommendations.NeighbourSnapshot;
+import ru.yandex.practicum.filmorate.utilities.recommendations.Recommender;
+import ru.yandex.practicum.filmorate.utilities.recommendations.SimilarityModel;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+@Service
+@Slf4j
+public class RecommendationService {
+    private static final long LSH_SEED = 1;
+    private static final long ALS_SEED = 1;
+
+    private final FilmStorage filmStorage;
+    private final int neighboursCount;
+    private final ForkJoinPool buildPool;
+    private final boolean approximate;
+    private final int lshBands;
+    private final int lshRowsPerBand;
+    private final int recallSampleSize;
+    private final boolean factorsEngine;
+    private final AlsTrainer alsTrainer;
+    private final Path factorsFile;
+    private final Path snapshotFile;
+    private final AtomicReference<FactorModel> factors = new AtomicReference<>();
+    private final AtomicReference<IncrementalRecommender> model = new AtomicReference<>();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "recommendations-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+    private final Object changesLock = new Object();
+    private List<Consumer<IncrementalRecommender>> changesDuringRebuild;
+
+    public RecommendationService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                                 @Value("${filmorate.recommendations.neighbours:50}") int neighboursCount,
+                                 @Value("${filmorate.recommendations.parallelism:0}") int parallelism,
+                                 @Value("${filmorate.recommendations.mode:exact}") String mode,
+                                 @Value("${filmorate.recommendations.lsh.bands:20}") int lshBands,
+                                 @Value("${filmorate.recommendations.lsh.rows-per-band:3}") int lshRowsPerBand,
+                                 @Value("${filmorate.recommendations.lsh.recall-sample:100}") int recallSampleSize,
+                                 @Value("${filmorate.recommendations.engine:item-item}") String engine,
+                                 @Value("${filmorate.recommendations.als.rank:32}") int alsRank,
+                                 @Value("${filmorate.recommendations.als.iterations:10}") int alsIterations,
+                                 @Value("${filmorate.recommendations.als.regularization:0.1}") double alsRegularization,
+                                 @Value("${filmorate.recommendations.als.alpha:40}") double alsAlpha,
+                                 @Value("${filmorate.recommendations.als.factors-file:./db/als-factors.bin}")
+                                 String factorsFile,
+                                 @Value("${filmorate.recommendations.snapshot-file:./db/recommendations.bin}")
+                                 String snapshotFile) {
+        this.filmStorage = filmStorage;
+        this.neighboursCount = neighboursCount;
+        this.buildPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.approximate = "approximate".equalsIgnoreCase(mode);
+        this.lshBands = lshBands;
+        this.lshRowsPerBand = lshRowsPerBand;
+        this.recallSampleSize = recallSampleSize;
+        this.factorsEngine = "als".equalsIgnoreCase(engine);
+        this.alsTrainer = new AlsTrainer(alsRank, alsIterations, alsRegularization, alsAlpha, ALS_SEED);
+        this.factorsFile = Path.of(factorsFile);
+        this.snapshotFile = Path.of(snapshotFile);
+    }
+
+    /**
+     * With the ALS engine recommendations come from the factors once they are trained or loaded,
+     * the item-item model serves users unknown to the factors and requests made before the factors are ready.
+     */
+    public Collection<Film> getRecommendations(int userId, Optional<Integer> count) {
+        IncrementalRecommender itemModel = getModel();
+        FactorModel factorModel = factors.get();
+        List<Integer> recommendations = factorsEngine && factorModel != null && factorModel.containsUser(userId) ?
+                factorModel.getRecommendations(userId, itemModel.getFilms(userId), count) :
+                itemModel.getRecommendations(userId, count);
+        if (recommendations.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return filmStorage.findByIds(recommendations, FilmView.full);
+    }
+
+    public void onLikeAdded(int filmId, int userId) {
+        applyChange(model -> model.addLike(filmId, userId));
+    }
+
+    public void onLikeRemoved(int filmId, int userId) {
+        applyChange(model -> model.removeLike(filmId, userId));
+    }
+
+    public void onFilmDeleted(int filmId) {
+        applyChange(model -> model.removeFilm(filmId));
+    }
+
+    public void onUserDeleted(int userId) {
+        applyChange(model -> model.removeUser(userId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+        buildPool.shutdownNow();
+    }
+
+    /*
+     * opens the last snapshot and the last factors at startup, so the first request does not wait for a full build;
+     * factors never saved are trained on the rebuild thread
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void openModelOnStartup() {
+        try {
+            getModel();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось открыть модель рекомендаций: {}", e.getMessage());
+        }
+        if (!factorsEngine) {
+            return;
+        }
+        if (Files.exists(factorsFile)) {
+            try {
+                factors.set(FactorModel.map(factorsFile));
+                log.debug("Факторы рекомендаций загружены из {}", factorsFile);
+                return;
+            } catch (IOException e) {
+                log.warn("Не удалось загрузить факторы рекомендаций из {}: {}", factorsFile, e.getMessage());
+            }
+        }
+        trainFactorsInBackground();
+    }
+
+    /*
+     * Likes keep the model fresh on their own, the scheduled rebuild only compacts updated neighbour lists
+     * and picks up changes of FILM_LIKES made past the service
+     */
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.rebuild-interval-ms:86400000}",
+            initialDelayString = "${filmorate.recommendations.rebuild-interval-ms:86400000}")
+    public void rebuildModelOnSchedule() {
+        rebuildModelInBackground();
+    }
+
+    /**
+     * Starts a rebuild on a background thread and returns at once; requests made before it starts share it.
+     */
+    public void rebuildModelInBackground() {
+        if (rebuildRequested.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                rebuildRequested.set(false);
+                tryRebuildModel();
+            });
+        }
+    }
+
+    /*
+     * runs on the rebuild thread, so a long training does not hold the scheduler thread shared by other jobs
+     */
+    @Scheduled(fixedDelayString = "${filmorate.recommendations.als.train-interval-ms:86400000}",
+            initialDelayString = "${filmorate.recommendations.als.train-interval-ms:86400000}")
+    public void trainFactorsInBackground() {
+        if (!factorsEngine) {
+            return;
+        }
+        rebuildExecutor.execute(() -> {
+            try {
+                trainFactors();
+            } catch (DataAccessException e) {
+                log.warn("Не удалось обучить факторы рекомендаций: {}", e.getMessage());
+            }
+        });
+    }
+
+    public void trainFactors() {
+        long start = System.currentTimeMillis();
+        Matrix likes = filmStorage.findLikesMatrix();
+        FactorModel factorModel = alsTrainer.train(likes, buildPool);
+        log.debug("Факторы рекомендаций обучены по {} лайкам за {} мс",
+                likes.getValuesCount(), System.currentTimeMillis() - start);
+        try {
+            factorModel.write(factorsFile);
+            factorModel = FactorModel.map(factorsFile);
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить факторы рекомендаций в {}: {}", factorsFile, e.getMessage());
+        }
+        factors.set(factorModel);
+    }
+
+    private void tryRebuildModel() {
+        try {
+            rebuildModel();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось перестроить модель рекомендаций: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a new model from all likes, saves its snapshot and atomically replaces the current model.
+     */
+    public synchronized void rebuildModel() {
+        replaceModel(likes -> saveSnapshot(buildSimilarityModel(likes)));
+    }
+
+    /*
+     * Builds never run concurrently; likes applied while a build is running are replayed on the new model
+     * (adding and removing likes are idempotent, so a like already read by the build is not counted twice)
+     */
+    private synchronized void replaceModel(Function<Matrix, NeighbourSnapshot> neighboursOfLikes) {
+        synchronized (changesLock) {
+            changesDuringRebuild = new ArrayList<>();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            Matrix likes = filmStorage.findLikesMatrix();
+            IncrementalRecommender newModel = new IncrementalRecommender(neighboursOfLikes.apply(likes),
+                    LikeStatistics.of(likes), neighboursCount);
+            synchronized (changesLock) {
+                changesDuringRebuild.forEach(change -> change.accept(newModel));
+                model.set(newModel);
+            }
+            log.debug("Модель рекомендаций обновлена по {} лайкам за {} мс",
+                    likes.getValuesCount(), System.currentTimeMillis() - start);
+        } finally {
+            synchronized (changesLock) {
+                changesDuringRebuild = null;
+            }
+        }
+    }
+
+    /*
+     * the snapshot file is mapped, so neighbour lists stay out of the heap; the heap copy is kept
+     * only when the file cannot be written
+     */
+    private NeighbourSnapshot saveSnapshot(SimilarityModel similarityModel) {
+        long version = System.currentTimeMillis();
+        try {
+            NeighbourSnapshot.write(similarityModel, version, snapshotFile);
+            return NeighbourSnapshot.map(snapshotFile);
+        } catch (IOException e) {
+            log.warn("Не удалось сохранить снимок модели рекомендаций в {}: {}", snapshotFile, e.getMessage());
+            return NeighbourSnapshot.of(similarityModel, version);
+        }
+    }
+
+    /*
+     * neighbour lists of the last snapshot are used as is, likes are read anew, so the model is fresh
+     * right away and only neighbour lists wait for the next rebuild
+     */
+    private synchronized void openModel() {
+        if (Files.exists(snapshotFile)) {
+            try {
+                NeighbourSnapshot snapshot = NeighbourSnapshot.map(snapshotFile);
+                replaceModel(likes -> snapshot);
+                log.debug("Модель рекомендаций открыта из снимка {} версии {}", snapshotFile, snapshot.getVersion());
+                return;
+            } catch (IOException e) {
+                log.warn("Не удалось открыть снимок модели рекомендаций {}: {}", snapshotFile, e.getMessage());
+            }
+        }
+        rebuildModel();
+    }
+
+    /*
+     * the approximate model compares a film only with the films sharing a MinHash bucket with it,
+     * its recall is measured on a sample of films against exact neighbours to tune bands and rows per band
+     */
+    private SimilarityModel buildSimilarityModel(Matrix likes) {
+        Recommender recommender = new Recommender(likes, true);
+        if (!approximate) {
+            return recommender.buildSimilarityModel(neighboursCount, buildPool);
+        }
+        MinHashIndex index = new MinHashIndex(likes, lshBands, lshRowsPerBand, LSH_SEED);
+        SimilarityModel similarityModel = recommender.buildSimilarityModel(neighboursCount, index);
+        if (recallSampleSize > 0) {
+            log.info("Полнота приближённой модели рекомендаций: {}",
+                    recommender.measureRecall(similarityModel, neighboursCount, recallSampleSize));
+        }
+        return similarityModel;
+    }
+
+    private void applyChange(Consumer<IncrementalRecommender> change) {
+        synchronized (changesLock) {
+            IncrementalRecommender current = model.get();
+            if (current != null) {
+                change.accept(current);
+            }
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+        }
+    }
+
+    private IncrementalRecommender getModel() {
+        IncrementalRecommender current = model.get();
+        if (current == null) {
+            synchronized (this) {
+                if (model.get() == null) {
+                    openModel();
+                }
+                current = model.get();
+            }
+        }
+        return current;
+    }
+}
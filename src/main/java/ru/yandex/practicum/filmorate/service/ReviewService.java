@@ -63,13 +63,19 @@ public class ReviewService {
     }
 
     private void ifFilmNotExistsThrow(int filmId) {
-        if (filmStorage.findById(filmId).isEmpty()) {
+        if (!filmStorage.existsById(filmId)) {
             throw new FilmNotFoundException(String.format(FILM_NOT_EXISTS_MSG, filmId));
         }
     }
 
+    private void ifReviewNotExistsThrow(int reviewId) {
+        if (!reviewStorage.existsById(reviewId)) {
+            throw new ReviewNotFoundException(String.format(REVIEW_NOT_EXISTS_MSG, reviewId));
+        }
+    }
+
     private void ifUserNotExistsThrowNotFoundException(int userId) {
-        if (userStorage.findById(userId).isEmpty()) {
+        if (!userStorage.existsById(userId)) {
             throw new UserNotFoundException(String.format(USER_NOT_EXISTS_MSG, userId));
         }
     }
@@ -107,6 +113,7 @@ public class ReviewService {
     }
 
     public void addLikeToReview(int reviewId, int userId) {
+        ifReviewNotExistsThrow(reviewId);
         ifUserNotExistsThrowNotFoundException(userId);
         if (reviewStorage.addLike(reviewId, userId)) {
             log.debug("Лайк от пользователя с id = {} успешно добавлен в отзыв с id = {}", userId, reviewId);
@@ -116,6 +123,7 @@ public class ReviewService {
     }
 
     public void addDislikeToReview(int reviewId, int userId) {
+        ifReviewNotExistsThrow(reviewId);
         ifUserNotExistsThrowNotFoundException(userId);
         if (reviewStorage.addDislike(reviewId, userId)) {
             log.debug("Дизлайк от пользователя с id = {} успешно добавлен в отзыв с id = {}", userId, reviewId);
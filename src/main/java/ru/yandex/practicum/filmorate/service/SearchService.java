@@ -0,0 +1,299 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.SearchBy;
+import ru.yandex.practicum.filmorate.storage.IndexGuard;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.utilities.bitmap.IntBitmap;
+import ru.yandex.practicum.filmorate.utilities.search.Match;
+import ru.yandex.practicum.filmorate.utilities.search.TrigramIndex;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Film titles and director names indexed by trigrams in memory, so a substring search does not scan FILMS.
+ * Loaded from the storages at startup or on first use, then kept in sync by FilmService and DirectorService,
+ * each change applied once its transaction commits.
+ * Matches of recent queries are cached; a change of a title or a director name drops only the queries
+ * contained in the old or the new text. Matches are ranked on every search, so likes need no invalidation.
+ */
+@Service
+@Slf4j
+public class SearchService {
+    private final FilmStorage filmStorage;
+    private final DirectorStorage directorStorage;
+    private final PopularityService popularityService;
+    private final TrigramIndex titles = new TrigramIndex();
+    private final TrigramIndex directorNames = new TrigramIndex();
+    private final Map<Integer, IntBitmap> filmsByDirector = new HashMap<>();
+    private final Map<Integer, int[]> directorsByFilm = new HashMap<>();
+    private final Map<ResultKey, Map<Integer, Match>> results;
+    private final IndexGuard guard = new IndexGuard(this::readFilms, this::clear);
+
+    public SearchService(@Qualifier("filmDbStorage") FilmStorage filmStorage, DirectorStorage directorStorage,
+                         PopularityService popularityService,
+                         @Value("${filmorate.films.search.cache-size:1000}") int cacheSize) {
+        this.filmStorage = filmStorage;
+        this.directorStorage = directorStorage;
+        this.popularityService = popularityService;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ResultKey, Map<Integer, Match>> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * @return ids of at most limit films whose title or director name, as chosen by {@code by}, contains the query,
+     * most relevant first: exact matches before prefix matches before other substrings,
+     * more liked films first within a kind of match, newer films first at last
+     */
+    public List<Integer> findFilmIds(String query, Set<SearchBy> by, int limit) {
+        ResultKey key = new ResultKey(query.toLowerCase(Locale.ROOT), Set.copyOf(by));
+        Map<Integer, Match> matches = guard.read(() -> {
+            Map<Integer, Match> cached;
+            synchronized (results) {
+                cached = results.get(key);
+            }
+            if (cached != null) {
+                return cached;
+            }
+            Map<Integer, Match> found = findMatches(query, by);
+            // under the read lock: a change either dropped the key before or waits for the put
+            synchronized (results) {
+                results.put(key, found);
+            }
+            return found;
+        });
+        return mostRelevant(matches, limit);
+    }
+
+    private Map<Integer, Match> findMatches(String query, Set<SearchBy> by) {
+        Map<Integer, Match> matches = new HashMap<>();
+        if (by.contains(SearchBy.title)) {
+            for (int filmId : titles.find(query)) {
+                matches.merge(filmId, titles.match(filmId, query), SearchService::stronger);
+            }
+        }
+        if (by.contains(SearchBy.director)) {
+            for (int directorId : directorNames.find(query)) {
+                Match match = directorNames.match(directorId, query);
+                IntBitmap films = filmsByDirector.get(directorId);
+                if (films != null) {
+                    for (int filmId : films.toArray()) {
+                        matches.merge(filmId, match, SearchService::stronger);
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableMap(matches);
+    }
+
+    public void onFilmAdded(Film film) {
+        guard.update(() -> putFilm(film));
+    }
+
+    public void onFilmUpdated(Film film) {
+        guard.update(() -> putFilm(film));
+    }
+
+    public void onFilmDeleted(int filmId) {
+        guard.update(() -> removeFilm(filmId));
+    }
+
+    public void onDirectorAdded(Director director) {
+        guard.update(() -> directorNames.put(director.getId(), director.getName()));
+    }
+
+    public void onDirectorUpdated(Director director) {
+        guard.update(() -> {
+            invalidateResults(List.of(director.getName().toLowerCase(Locale.ROOT)));
+            invalidateResults(texts(directorNames, new int[]{director.getId()}));
+            directorNames.put(director.getId(), director.getName());
+        });
+    }
+
+    public void onDirectorDeleted(int directorId) {
+        guard.update(() -> {
+            invalidateResults(texts(directorNames, new int[]{directorId}));
+            directorNames.remove(directorId);
+            IntBitmap films = filmsByDirector.remove(directorId);
+            if (films != null) {
+                for (int filmId : films.toArray()) {
+                    directorsByFilm.computeIfPresent(filmId, (id, directorIds) -> Arrays.stream(directorIds)
+                            .filter(otherId -> otherId != directorId)
+                            .toArray());
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the index, it is loaded anew on the next search; needed when films are changed past the service.
+     */
+    public void reload() {
+        guard.reload();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            guard.load();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось загрузить поисковый индекс фильмов: {}", e.getMessage());
+        }
+    }
+
+    private Runnable readFilms() {
+        Collection<Director> directors = directorStorage.findAll();
+        List<Film> films = new ArrayList<>();
+        filmStorage.forEach(FilmView.summary, films::add);
+        log.debug("Загружен поисковый индекс фильмов: фильмов {}", films.size());
+        return () -> {
+            directors.forEach(director -> directorNames.put(director.getId(), director.getName()));
+            films.forEach(this::putFilm);
+        };
+    }
+
+    private void clear() {
+        synchronized (results) {
+            results.clear();
+        }
+        titles.clear();
+        directorNames.clear();
+        filmsByDirector.clear();
+        directorsByFilm.clear();
+    }
+
+    /*
+     * the weakest kept candidate is at the head of the heap, so the heap never grows past limit
+     */
+    private List<Integer> mostRelevant(Map<Integer, Match> matches, int limit) {
+        Comparator<Candidate> relevance = Comparator.comparing((Candidate candidate) -> candidate.match)
+                .thenComparingInt(candidate -> candidate.likesCount)
+                .thenComparingInt(candidate -> candidate.filmId);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Integer.min(limit, matches.size()) + 1, relevance);
+        matches.forEach((filmId, match) -> {
+            candidates.add(new Candidate(filmId, match, popularityService.getLikesCount(filmId)));
+            if (candidates.size() > limit) {
+                candidates.poll();
+            }
+        });
+        return candidates.stream()
+                .sorted(relevance.reversed())
+                .map(candidate -> candidate.filmId)
+                .collect(Collectors.toList());
+    }
+
+    private static Match stronger(Match first, Match second) {
+        return first.compareTo(second) >= 0 ? first : second;
+    }
+
+    private void putFilm(Film film) {
+        removeFilm(film.getId());
+        titles.put(film.getId(), film.getName());
+        int[] directorIds = film.getDirectors().stream()
+                .mapToInt(Director::getId)
+                .toArray();
+        directorsByFilm.put(film.getId(), directorIds);
+        for (int directorId : directorIds) {
+            filmsByDirector.computeIfAbsent(directorId, id -> new IntBitmap()).add(film.getId());
+        }
+        invalidateResultsOfFilm(film.getId());
+    }
+
+    private void removeFilm(int filmId) {
+        invalidateResultsOfFilm(filmId);
+        titles.remove(filmId);
+        int[] directorIds = directorsByFilm.remove(filmId);
+        if (directorIds == null) {
+            return;
+        }
+        for (int directorId : directorIds) {
+            IntBitmap films = filmsByDirector.get(directorId);
+            if (films != null) {
+                films.remove(filmId);
+            }
+        }
+    }
+
+    private void invalidateResultsOfFilm(int filmId) {
+        List<String> texts = texts(directorNames, directorsByFilm.getOrDefault(filmId, new int[0]));
+        texts.addAll(texts(titles, new int[]{filmId}));
+        invalidateResults(texts);
+    }
+
+    /*
+     * only a query contained in one of the texts could gain or lose films when the texts change
+     */
+    private void invalidateResults(List<String> texts) {
+        if (texts.isEmpty()) {
+            return;
+        }
+        synchronized (results) {
+            results.keySet().removeIf(key -> texts.stream().anyMatch(text -> text.contains(key.query)));
+        }
+    }
+
+    private static List<String> texts(TrigramIndex index, int[] ids) {
+        List<String> texts = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            String text = index.getText(id);
+            if (text != null) {
+                texts.add(text);
+            }
+        }
+        return texts;
+    }
+
+    private static class ResultKey {
+        private final String query;
+        private final Set<SearchBy> by;
+
+        ResultKey(String query, Set<SearchBy> by) {
+            this.query = query;
+            this.by = by;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ResultKey)) {
+                return false;
+            }
+            ResultKey other = (ResultKey) o;
+            return query.equals(other.query) && by.equals(other.by);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, by);
+        }
+    }
+
+    private static class Candidate {
+        private final int filmId;
+        private final Match match;
+        private final int likesCount;
+
+        Candidate(int filmId, Match match, int likesCount) {
+            this.filmId = filmId;
+            this.match = match;
+            this.likesCount = likesCount;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.SearchBy;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.utilities.search.SuggestionTrie;
+
+import java.util.*;
+
+/**
+ * Completions of film titles and director names ranked by likes of their films.
+ * The trie is immutable: changes of titles and directors only mark it stale,
+ * and a scheduled task builds a new one and swaps it in, so lookups never wait for a build.
+ * Likes only change the ranking, so they are picked up by a slower schedule.
+ */
+@Service
+@Slf4j
+public class SuggestService {
+    private final FilmStorage filmStorage;
+    private final DirectorStorage directorStorage;
+    private final int maxCount;
+    private volatile SuggestionTrie<Suggestion> trie;
+    private volatile boolean stale;
+    private volatile boolean weightsStale;
+
+    public SuggestService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                          DirectorStorage directorStorage,
+                          @Value("${filmorate.films.suggest.max-count:10}") int maxCount) {
+        this.filmStorage = filmStorage;
+        this.directorStorage = directorStorage;
+        this.maxCount = maxCount;
+    }
+
+    /**
+     * @return at most count (and at most filmorate.films.suggest.max-count) completions of the prefix
+     */
+    public List<Suggestion> suggest(String prefix, int count) {
+        SuggestionTrie<Suggestion> current = trie;
+        if (current == null) {
+            current = rebuild();
+        }
+        return current.complete(prefix, Integer.min(count, maxCount));
+    }
+
+    /**
+     * Marks the completions stale, the next scheduled rebuild replaces them.
+     */
+    public void onFilmsChanged() {
+        stale = true;
+    }
+
+    /**
+     * Marks the weights of the completions stale, the next scheduled refresh of weights replaces them.
+     */
+    public void onLikesChanged() {
+        weightsStale = true;
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.films.suggest.rebuild-interval-ms:5000}",
+            initialDelayString = "${filmorate.films.suggest.rebuild-interval-ms:5000}")
+    public void rebuildIfStale() {
+        if (!stale) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось перестроить подсказки фильмов: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.films.suggest.weights-refresh-interval-ms:600000}",
+            initialDelayString = "${filmorate.films.suggest.weights-refresh-interval-ms:600000}")
+    public void refreshWeightsIfStale() {
+        if (!weightsStale) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось обновить веса подсказок фильмов: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось построить подсказки фильмов: {}", e.getMessage());
+        }
+    }
+
+    /*
+     * a title or a director name is one completion however many films share it, weighted by all their likes;
+     * the stale marks are dropped before reading, so a change made during the build marks the new trie stale again
+     */
+    public synchronized SuggestionTrie<Suggestion> rebuild() {
+        stale = false;
+        weightsStale = false;
+        long start = System.currentTimeMillis();
+        Map<String, Suggestion> suggestions = new HashMap<>();
+        directorStorage.findAll().forEach(director ->
+                suggestion(suggestions, director.getName(), SearchBy.director));
+        filmStorage.forEach(FilmView.summary, film -> {
+            Suggestion title = suggestion(suggestions, film.getName(), SearchBy.title);
+            title.setLikesCount(title.getLikesCount() + film.getLikesCount());
+            film.getDirectors().forEach(director -> {
+                Suggestion name = suggestion(suggestions, director.getName(), SearchBy.director);
+                name.setLikesCount(name.getLikesCount() + film.getLikesCount());
+            });
+        });
+
+        SuggestionTrie.Builder<Suggestion> builder = SuggestionTrie.builder(maxCount);
+        suggestions.values().forEach(suggestion ->
+                builder.add(suggestion.getText(), suggestion, suggestion.getLikesCount()));
+        SuggestionTrie<Suggestion> newTrie = builder.build();
+        trie = newTrie;
+        log.debug("Подсказки фильмов построены: {} за {} мс", newTrie.size(), System.currentTimeMillis() - start);
+        return newTrie;
+    }
+
+    private static Suggestion suggestion(Map<String, Suggestion> suggestions, String text, SearchBy by) {
+        return suggestions.computeIfAbsent(by + ":" + text.toLowerCase(Locale.ROOT),
+                key -> new Suggestion(text, by, 0));
+    }
+}
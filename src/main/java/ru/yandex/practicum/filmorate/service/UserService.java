@@ -4,27 +4,39 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.event.FeedEventStorage;
-import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class UserService {
     private static final String USER_NOT_EXISTS_MSG = "Пользователь с id = %d не существует";
     private final UserStorage userStorage;
-    private final FilmStorage filmStorage;
     private final FeedEventStorage feedEventStorage;
+    private final RecommendationService recommendationService;
+    private final PopularityService popularityService;
+    private final SuggestService suggestService;
+    private final LikeIndex likeIndex;
 
     public UserService(@Qualifier("userDbStorage") UserStorage userStorage,
-                       @Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       FeedEventStorage feedEventStorage) {
+                       FeedEventStorage feedEventStorage,
+                       RecommendationService recommendationService,
+                       PopularityService popularityService,
+                       SuggestService suggestService,
+                       LikeIndex likeIndex) {
         this.userStorage = userStorage;
-        this.filmStorage = filmStorage;
         this.feedEventStorage = feedEventStorage;
+        this.recommendationService = recommendationService;
+        this.popularityService = popularityService;
+        this.suggestService = suggestService;
+        this.likeIndex = likeIndex;
     }
 
     public User add(User user) {
@@ -69,10 +81,27 @@ public class UserService {
         return userStorage.findAll();
     }
 
+    public Collection<User> getUsersPage(int afterId, int limit) {
+        if (limit <= 0) {
+            throw new ValidationException("Размер страницы должен быть положительным");
+        }
+        log.debug("Страница пользователей после id = {} успешно отправлена", afterId);
+        return userStorage.findPage(afterId, limit);
+    }
+
+    public void exportAllUsers(Consumer<User> action) {
+        userStorage.forEach(action);
+        log.debug("Список всех пользователей успешно выгружен");
+    }
+
     public void deleteUserById(int id) {
+        int[] likedFilmIds = likeIndex.getFilms(id);
         if (!userStorage.deleteById(id)) {
             throw new UserNotFoundException(String.format(USER_NOT_EXISTS_MSG, id));
         }
+        recommendationService.onUserDeleted(id);
+        popularityService.onUserDeleted(likedFilmIds);
+        suggestService.onLikesChanged();
         log.debug("Пользователь с id = {} успешно удален", id);
     }
 
@@ -103,20 +132,23 @@ public class UserService {
     }
 
     public Collection<User> getFriendsById(int id) {
-        if (userStorage.findById(id).isEmpty()) {
+        if (!userStorage.existsById(id)) {
             throw new UserNotFoundException(String.format(USER_NOT_EXISTS_MSG, id));
         }
         log.debug("Список друзей для пользователя с id = {} отправлен", id);
         return userStorage.findFriendsById(id);
     }
 
-    public Collection<Film> getRecommendations(int userId) {
+    public Collection<Film> getRecommendations(int userId, Optional<Integer> count) {
+        if (count.isPresent() && count.get() < 0) {
+            throw new ValidationException("Количество рекомендаций не может быть отрицательным");
+        }
         log.debug("Список рекомендаций успешно выдан пользователю с id {}", userId);
-        return filmStorage.getRecommendations(userId);
+        return recommendationService.getRecommendations(userId, count);
     }
 
     public Collection<FeedEvent> getFeedEvents(int id) {
-        if (userStorage.findById(id).isEmpty()) {
+        if (!userStorage.existsById(id)) {
             throw new UserNotFoundException(String.format(USER_NOT_EXISTS_MSG, id));
         }
         log.debug("Лента новостей для пользователя с id = {} отправлена", id);
@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.utilities.bitmap.IntBitmap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Ids of FILMS, USERS and REVIEWS as bitmaps, so an id missing from a table is told without a query.
+ * Ids of a table are loaded on first use, then the storages add saved ids and remove deleted ones
+ * once their transactions commit.
+ * Rows can still disappear past the storages (by a cascade), so an id found here is only a candidate.
+ */
+@Component
+@RequiredArgsConstructor
+public class IdIndex {
+    public static final String FILMS = "FILMS";
+    public static final String USERS = "USERS";
+    public static final String REVIEWS = "REVIEWS";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, IntBitmap> ids = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @return false if the table has no such id, true if it may have
+     */
+    public boolean mayContain(String table, int id) {
+        lock.readLock().lock();
+        try {
+            IntBitmap tableIds = ids.get(table);
+            if (tableIds != null) {
+                return tableIds.contains(id);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return load(table).contains(id);
+    }
+
+    public void add(String table, int id) {
+        update(table, tableIds -> tableIds.add(id));
+    }
+
+    public void remove(String table, int id) {
+        update(table, tableIds -> tableIds.remove(id));
+    }
+
+    /**
+     * Drops all ids, they are loaded anew on the next check; needed when the tables are changed past the storages.
+     */
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            ids.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * ids of a table that is not loaded yet are skipped: the change is committed, so the load reads it;
+     * a load holds the write lock while reading, so a change committed meanwhile waits and is applied after it
+     */
+    private void update(String table, Consumer<IntBitmap> change) {
+        IndexGuard.afterCommit(() -> apply(table, change));
+    }
+
+    private void apply(String table, Consumer<IntBitmap> change) {
+        lock.writeLock().lock();
+        try {
+            IntBitmap tableIds = ids.get(table);
+            if (tableIds != null) {
+                change.accept(tableIds);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private IntBitmap load(String table) {
+        lock.writeLock().lock();
+        try {
+            IntBitmap tableIds = ids.get(table);
+            if (tableIds == null) {
+                IntBitmap loadedIds = new IntBitmap();
+                jdbcTemplate.query("SELECT ID FROM " + table, rs -> {
+                    loadedIds.add(rs.getInt("ID"));
+                });
+                ids.put(table, loadedIds);
+                tableIds = loadedIds;
+            }
+            return tableIds;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Lock and load state of an in-memory copy of database rows, loaded on first read.
+ * A change is applied once the transaction that made it commits, so a rolled back change never shows.
+ * Changes committed while the rows are being read are kept and replayed on the loaded copy:
+ * the load may or may not have seen them, so changes must set a state rather than count.
+ */
+public final class IndexGuard {
+    private final Supplier<Runnable> loader;
+    private final Runnable clear;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+    private List<Runnable> changesDuringLoad;
+
+    /**
+     * @param loader reads the rows without the lock and returns the action that puts them into the cleared copy
+     * @param clear  empties the copy
+     */
+    public IndexGuard(Supplier<Runnable> loader, Runnable clear) {
+        this.loader = loader;
+        this.clear = clear;
+    }
+
+    public <T> T read(Supplier<T> query) {
+        if (!loaded) {
+            load();
+        }
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the change after the current transaction commits, or right away outside a transaction.
+     * A change made before the first load is skipped: the load reads it from the database.
+     */
+    public void update(Runnable change) {
+        afterCommit(() -> apply(change));
+    }
+
+    /**
+     * Runs the action after the current transaction commits, never if it rolls back; outside a transaction right away.
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    public synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        setChangesDuringLoad(new ArrayList<>());
+        Runnable fill;
+        try {
+            fill = loader.get();
+        } catch (RuntimeException e) {
+            setChangesDuringLoad(null);
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            clear.run();
+            fill.run();
+            changesDuringLoad.forEach(Runnable::run);
+            loaded = true;
+        } finally {
+            changesDuringLoad = null;
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the copy, it is loaded anew on the next read.
+     */
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            clear.run();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                change.run();
+            } else if (changesDuringLoad != null) {
+                changesDuringLoad.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void setChangesDuringLoad(List<Runnable> changes) {
+        lock.writeLock().lock();
+        try {
+            changesDuringLoad = changes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -16,6 +17,7 @@ import java.util.*;
 @RequiredArgsConstructor
 public class DirectorDbStorage implements DirectorStorage {
     private final JdbcTemplate jdbcTemplate;
+    private final FilmCache filmCache;
 
     @Override
     public Collection<Director> findAll() {
@@ -50,7 +52,11 @@ public class DirectorDbStorage implements DirectorStorage {
     public boolean deleteById (int id) {
         String sql = "DELETE FROM DIRECTORS " +
                 "WHERE ID = ?";
-        return jdbcTemplate.update(sql, id) > 0;
+        if (jdbcTemplate.update(sql, id) == 0) {
+            return false;
+        }
+        filmCache.invalidateAll();
+        return true;
     }
 
     @Override
@@ -61,6 +67,7 @@ public class DirectorDbStorage implements DirectorStorage {
         if (jdbcTemplate.update(sql, director.getName(), director.getId()) == 0) {
             return Optional.empty();
         }
+        filmCache.invalidateAll();
         return Optional.of(director);
     }
 
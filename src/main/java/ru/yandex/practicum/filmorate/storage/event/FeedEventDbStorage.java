@@ -27,6 +27,21 @@ public class FeedEventDbStorage implements FeedEventStorage {
                 entityId);
     }
 
+    @Override
+    public void saveAll(List<FeedEvent> events) {
+        String sql =
+                "INSERT INTO USER_FEEDS " +
+                "(USER_ID, TIME_STAMP, EVENT_TYPE, OPERATION, ENTITY_ID) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        jdbcTemplate.batchUpdate(sql, events, events.size(), (ps, event) -> {
+            ps.setInt(1, event.getUserId());
+            ps.setLong(2, event.getTimestamp());
+            ps.setString(3, event.getEventType());
+            ps.setString(4, event.getOperation());
+            ps.setInt(5, event.getEntityId());
+        });
+    }
+
     @Override
     public List<FeedEvent> findAllByUserId(int id) {
         String sql = "SELECT * FROM USER_FEEDS WHERE USER_ID = ?";
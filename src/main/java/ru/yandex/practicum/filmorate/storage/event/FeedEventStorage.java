@@ -8,5 +8,6 @@ import java.util.List;
 
 public interface FeedEventStorage {
     void save(int userId, EventType eventType, Operation operation, int entityId);
+    void saveAll(List<FeedEvent> events);
     List<FeedEvent> findAllByUserId(int id);
 }
@@ -0,0 +1,158 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+import java.util.*;
+
+/**
+ * Least recently used films, bounded by weight: a film weighs 1 plus its likes, genres and directors,
+ * so a few heavily liked films take as much room as many small ones.
+ * Storages that change films or their likes, genres or directors invalidate the entries they touch.
+ * The cache keeps and hands out copies, so a caller that changes a film it got does not change the cached one.
+ */
+@Component
+@Slf4j
+public class FilmCache {
+    private final long maxWeight;
+    private final LinkedHashMap<Integer, Entry> films = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public FilmCache(@Value("${filmorate.films.cache.max-weight:100000}") long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    public synchronized Optional<Film> get(int id) {
+        Entry entry = films.get(id);
+        if (entry == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(copy(entry.film));
+    }
+
+    /**
+     * @return current generation, to be passed to {@link #put(Film, long)} for films read after this call
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Keeps a film read from the database, unless the cache was invalidated since the read started:
+     * the film could have been read before the change that invalidated it.
+     */
+    public synchronized void put(Film film, long readGeneration) {
+        if (readGeneration != generation) {
+            return;
+        }
+        Entry entry = new Entry(copy(film));
+        if (entry.weight > maxWeight) {
+            return;
+        }
+        Entry previous = films.put(film.getId(), entry);
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += entry.weight;
+        Iterator<Entry> eldest = films.values().iterator();
+        while (weight > maxWeight) {
+            weight -= eldest.next().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops the film now and, inside a transaction, once more after it ends:
+     * a read made in between could see the data the transaction had not committed yet.
+     */
+    public void invalidate(int id) {
+        remove(id);
+        afterTransaction(() -> remove(id));
+    }
+
+    public void invalidateAll() {
+        clear();
+        afterTransaction(this::clear);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getSize() {
+        return films.size();
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.films.cache.stats-interval-ms:600000}",
+            initialDelayString = "${filmorate.films.cache.stats-interval-ms:600000}")
+    public synchronized void logStats() {
+        log.info("Кэш фильмов: фильмов {}, вес {} из {}, попаданий {}, промахов {}, вытеснений {}",
+                films.size(), weight, maxWeight, hits, misses, evictions);
+    }
+
+    private synchronized void remove(int id) {
+        generation++;
+        Entry entry = films.remove(id);
+        if (entry != null) {
+            weight -= entry.weight;
+        }
+    }
+
+    private synchronized void clear() {
+        generation++;
+        films.clear();
+        weight = 0;
+    }
+
+    /*
+     * only films read with their likes are cached, their count comes from the likes
+     */
+    private static Film copy(Film film) {
+        Mpa mpa = film.getMpa() == null ? null : new Mpa(film.getMpa().getId(), film.getMpa().getName());
+        return new Film(film.getId(), new HashSet<>(film.getWhoLikedUserIds()), film.getName(),
+                film.getDescription(), film.getReleaseDate(), film.getDuration(), mpa,
+                new HashSet<>(film.getDirectors()), new LinkedHashSet<>(film.getGenres()), null);
+    }
+
+    private static void afterTransaction(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private static class Entry {
+        private final Film film;
+        private final long weight;
+
+        Entry(Film film) {
+            this.film = film;
+            this.weight = 1L + film.getWhoLikedUserIds().size() + film.getGenres().size() + film.getDirectors().size();
+        }
+    }
+}
@@ -1,24 +1,25 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.model.SortBy;
-import ru.yandex.practicum.filmorate.utilities.recommendations.Recommender;
+import ru.yandex.practicum.filmorate.storage.IdIndex;
 import ru.yandex.practicum.filmorate.utilities.recommendations.Matrix;
-import ru.yandex.practicum.filmorate.utilities.sql.SqlArrayConverter;
 
 import java.sql.*;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.*;
 
@@ -27,78 +28,137 @@ import static java.util.stream.Collectors.*;
 public class FilmDbStorage implements FilmStorage {
     private static final String FIND_ALL =
             "SELECT FILMS.*, " +
-                    "MPA.NAME AS MPA_NAME, " +
-                    "ARRAY_AGG(FG.GENRE_ID) AS GENRE_IDS, " +
-                    "ARRAY_AGG(G.NAME) AS GENRE_NAMES, " +
-                    "ARRAY_AGG(FL.LIKED_BY_USER_ID) AS LIKES," +
-                    "ARRAY_AGG(FD.DIRECTOR_ID) AS DIRECTOR_IDS," +
-                    "ARRAY_AGG(D.NAME) AS DIRECTOR_NAMES," +
+                    "MPA.NAME AS MPA_NAME " +
             "FROM FILMS " +
-            "LEFT JOIN MPA on FILMS.MPA_ID = MPA.ID " +
-            "LEFT JOIN FILM_GENRE FG on FILMS.ID = FG.FILM_ID " +
-            "LEFT JOIN GENRES G on G.ID = FG.GENRE_ID " +
-            "LEFT JOIN FILM_LIKES FL on FILMS.ID = FL.FILM_ID " +
-            "LEFT JOIN FILM_DIRECTOR FD on FILMS.ID = FD.FILM_ID " +
-            "LEFT JOIN DIRECTORS D on D.ID = FD.DIRECTOR_ID ";
+            "LEFT JOIN MPA on FILMS.MPA_ID = MPA.ID ";
+    private static final String CHANGE_LIKES_COUNT =
+            "UPDATE FILMS SET LIKES_COUNT = LIKES_COUNT + ? WHERE ID = ?";
+    private static final int IN_BATCH_SIZE = 1000;
 
     private final JdbcTemplate jdbcTemplate;
+    private final LikeIndex likeIndex;
+    private final FilmCache filmCache;
+    private final IdIndex idIndex;
 
     @Override
     public Collection<Film> findAll() {
         String sql = FIND_ALL +
-                "GROUP BY FILMS.ID";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs));
+                "ORDER BY FILMS.ID";
+        return queryFilms(FilmView.full, sql);
     }
 
-    private Film mapRowToFilm(ResultSet rs) throws SQLException {
+    /*
+     * films are read first, then genres, directors and likes of all of them are read with one query per table
+     * (per IN_BATCH_SIZE films), so a film is never multiplied by its genres × likes × directors;
+     * a summary skips FILM_LIKES and takes the count from FILMS.LIKES_COUNT
+     */
+    private List<Film> queryFilms(FilmView view, String sql, Object... args) {
+        List<Film> films = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs, view), args);
+        loadChildren(films, view);
+        return films;
+    }
+
+    private void loadChildren(List<Film> films, FilmView view) {
+        Map<Integer, Film> filmsById = films.stream()
+                .collect(toMap(Film::getId, film -> film, (film1, film2) -> film1, LinkedHashMap::new));
+        List<Integer> ids = new ArrayList<>(filmsById.keySet());
+        for (int from = 0; from < ids.size(); from += IN_BATCH_SIZE) {
+            List<Integer> batch = ids.subList(from, Integer.min(from + IN_BATCH_SIZE, ids.size()));
+            loadGenres(filmsById, batch);
+            loadDirectors(filmsById, batch);
+            if (view.hasLikes()) {
+                loadLikes(filmsById, batch);
+            }
+        }
+    }
+
+    @Override
+    public Collection<Film> findPage(int afterId, int limit, FilmView view) {
+        String sql = FIND_ALL +
+                "WHERE FILMS.ID > ? " +
+                "ORDER BY FILMS.ID " +
+                "LIMIT ?";
+        return queryFilms(view, sql, afterId, limit);
+    }
+
+    /*
+     * films are read with a forward-only cursor and handed out after every IN_BATCH_SIZE of them get their children,
+     * so only one batch is held in memory
+     */
+    @Override
+    public void forEach(FilmView view, Consumer<Film> action) {
+        String sql = FIND_ALL +
+                "ORDER BY FILMS.ID";
+        List<Film> batch = new ArrayList<>(IN_BATCH_SIZE);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stm = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stm.setFetchSize(IN_BATCH_SIZE);
+            return stm;
+        }, (RowCallbackHandler) rs -> {
+            batch.add(mapRowToFilm(rs, view));
+            if (batch.size() == IN_BATCH_SIZE) {
+                loadChildren(batch, view);
+                batch.forEach(action);
+                batch.clear();
+            }
+        });
+        loadChildren(batch, view);
+        batch.forEach(action);
+    }
+
+    private Film mapRowToFilm(ResultSet rs, FilmView view) throws SQLException {
         int id = rs.getInt("ID");
         String name = rs.getString("NAME");
         String description = rs.getString("DESCRIPTION");
         LocalDate releaseDate = rs.getDate("RELEASE_DATE").toLocalDate();
         int duration = rs.getInt("DURATION");
         Mpa mpa = new Mpa(rs.getInt("MPA_ID"), rs.getString("MPA_NAME"));
-        Set<Genre> genres = getSetOfGenres(rs);
-        Set<Director> director = getSetOfDirector(rs);
-        Set<Integer> likes = getSetOfLikes(rs);
-        return new Film(id, likes, name, description, releaseDate, duration, mpa, director, genres);
+        Integer likesCount = view.hasLikes() ? null : rs.getInt("LIKES_COUNT");
+        return new Film(id, new HashSet<>(), name, description, releaseDate, duration, mpa,
+                new HashSet<>(), new LinkedHashSet<>(), likesCount);
     }
 
-    private Set<Genre> getSetOfGenres(ResultSet row) throws SQLException {
-        Array idsArr = row.getArray("GENRE_IDS");
-        Array namesArr = row.getArray("GENRE_NAMES");
-        Object[] idsArrValues = (Object[]) idsArr.getArray();
-        if (idsArrValues[0] == null) {
-            return Collections.emptySet();
-        }
-        Object[] namesArrValues = (Object[]) namesArr.getArray();
-        return IntStream.range(0, idsArrValues.length)
-                .mapToObj(i -> new Genre((Integer) idsArrValues[i], (String) namesArrValues[i]))
-                .sorted(Comparator.comparingInt(Genre::getId))
-                .collect(toCollection(LinkedHashSet::new));
+    private void loadGenres(Map<Integer, Film> films, List<Integer> ids) {
+        String sql = "SELECT FG.FILM_ID, G.ID, G.NAME " +
+                "FROM FILM_GENRE FG " +
+                "JOIN GENRES G on G.ID = FG.GENRE_ID " +
+                "WHERE FG.FILM_ID IN (" + placeholders(ids.size()) + ") " +
+                "ORDER BY G.ID";
+        Map<Integer, Set<Genre>> genres = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            genres.computeIfAbsent(rs.getInt("FILM_ID"), id -> new LinkedHashSet<>())
+                    .add(new Genre(rs.getInt("ID"), rs.getString("NAME")));
+        }, ids.toArray());
+        genres.forEach((filmId, filmGenres) -> films.get(filmId).setGenres(filmGenres));
     }
 
-    private Set<Director> getSetOfDirector(ResultSet row) throws SQLException {
-        Array idsArr = row.getArray("DIRECTOR_IDS");
-        Array namesArr = row.getArray("DIRECTOR_NAMES");
-        Object[] idsArrValues = (Object[]) idsArr.getArray();
-        if (idsArrValues[0] == null) {
-            return Collections.emptySortedSet();
-        }
-        Object[] namesArrValues = (Object[]) namesArr.getArray();
-        return IntStream.range(0, idsArrValues.length)
-                .mapToObj(i -> new Director((Integer) idsArrValues[i], (String) namesArrValues[i]))
-                .collect(toSet());
+    private void loadDirectors(Map<Integer, Film> films, List<Integer> ids) {
+        String sql = "SELECT FD.FILM_ID, D.ID, D.NAME " +
+                "FROM FILM_DIRECTOR FD " +
+                "JOIN DIRECTORS D on D.ID = FD.DIRECTOR_ID " +
+                "WHERE FD.FILM_ID IN (" + placeholders(ids.size()) + ")";
+        Map<Integer, Set<Director>> directors = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            directors.computeIfAbsent(rs.getInt("FILM_ID"), id -> new HashSet<>())
+                    .add(new Director(rs.getInt("ID"), rs.getString("NAME")));
+        }, ids.toArray());
+        directors.forEach((filmId, filmDirectors) -> films.get(filmId).setDirectors(filmDirectors));
     }
 
-    private Set<Integer> getSetOfLikes(ResultSet rs) throws SQLException {
-        Array likesArray = rs.getArray("LIKES");
-        Object[] values = (Object[]) likesArray.getArray();
-        if (values[0] == null) {
-            return Collections.emptySet();
-        }
-        return Arrays.stream(values)
-                .map(value -> (Integer) value)
-                .collect(toSet());
+    private void loadLikes(Map<Integer, Film> films, List<Integer> ids) {
+        String sql = "SELECT FILM_ID, LIKED_BY_USER_ID " +
+                "FROM FILM_LIKES " +
+                "WHERE FILM_ID IN (" + placeholders(ids.size()) + ")";
+        Map<Integer, Set<Integer>> likes = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            likes.computeIfAbsent(rs.getInt("FILM_ID"), id -> new HashSet<>()).add(rs.getInt("LIKED_BY_USER_ID"));
+        }, ids.toArray());
+        likes.forEach((filmId, filmLikes) -> films.get(filmId).setWhoLikedUserIds(filmLikes));
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
     }
 
     @Override
@@ -117,6 +177,7 @@ public class FilmDbStorage implements FilmStorage {
         }, keyHolder);
         int filmId = keyHolder.getKey().intValue();
         film.setId(filmId);
+        idIndex.add(IdIndex.FILMS, filmId);
 
         saveGenres(film);
         saveDirectors(film);
@@ -124,6 +185,51 @@ public class FilmDbStorage implements FilmStorage {
         return film;
     }
 
+    /*
+     * films are inserted with one batch and genres and directors with one batch per table;
+     * the caller holds the transaction, so the list is saved whole or not at all
+     */
+    @Override
+    public List<Film> saveAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        String sql = "INSERT INTO FILMS (NAME, DESCRIPTION, RELEASE_DATE, DURATION, MPA_ID) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement stm = connection.prepareStatement(sql, new String[]{"ID"})) {
+                for (Film film : films) {
+                    stm.setString(1, film.getName());
+                    stm.setString(2, film.getDescription());
+                    stm.setDate(3, Date.valueOf(film.getReleaseDate()));
+                    stm.setLong(4, film.getDuration());
+                    stm.setInt(5, film.getMpa().getId());
+                    stm.addBatch();
+                }
+                stm.executeBatch();
+                try (ResultSet keys = stm.getGeneratedKeys()) {
+                    for (Film film : films) {
+                        keys.next();
+                        film.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+
+        List<Object[]> genreRows = new ArrayList<>();
+        List<Object[]> directorRows = new ArrayList<>();
+        for (Film film : films) {
+            film.getGenres().forEach(genre -> genreRows.add(new Object[]{film.getId(), genre.getId()}));
+            film.getDirectors().forEach(director -> directorRows.add(new Object[]{director.getId(), film.getId()}));
+            idIndex.add(IdIndex.FILMS, film.getId());
+            setGenresSortedById(film);
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO FILM_GENRE (FILM_ID, GENRE_ID) VALUES (?, ?)", genreRows);
+        jdbcTemplate.batchUpdate("INSERT INTO FILM_DIRECTOR (DIRECTOR_ID, FILM_ID) VALUES (?, ?)", directorRows);
+        return films;
+    }
+
     private void setGenresSortedById(Film film) {
         Set<Genre> genres = film.getGenres().stream()
                 .sorted(Comparator.comparingInt(Genre::getId))
@@ -131,31 +237,24 @@ public class FilmDbStorage implements FilmStorage {
         film.setGenres(genres);
     }
 
+    /*
+     * like saveLikes and saveDirectors, writes only the rows that differ from the stored ones,
+     * so a film whose genres did not change costs one select
+     */
     private void saveGenres(Film film) {
-        jdbcTemplate.update("DELETE FROM FILM_GENRE WHERE FILM_ID = ?", film.getId());
-
-        List<Genre> genres = new ArrayList<>(film.getGenres());
         int filmId = film.getId();
-        String sql = "INSERT INTO FILM_GENRE (FILM_ID, GENRE_ID) VALUES (?, ?)";
-
-        if (!genres.isEmpty()) {
-            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps, int i) throws SQLException {
-                    ps.setInt(1, filmId);
-                    ps.setInt(2, genres.get(i).getId());
-                }
+        Set<Integer> genreIds = film.getGenres().stream().map(Genre::getId).collect(Collectors.toSet());
+        Set<Integer> storedGenreIds = findAssociatedIds("SELECT GENRE_ID FROM FILM_GENRE WHERE FILM_ID = ?", filmId);
 
-                @Override
-                public int getBatchSize() {
-                    return genres.size();
-                }
-            });
-        }
+        updateAssociations("DELETE FROM FILM_GENRE WHERE GENRE_ID = ? AND FILM_ID = ?",
+                filmId, difference(storedGenreIds, genreIds));
+        updateAssociations("INSERT INTO FILM_GENRE (GENRE_ID, FILM_ID) VALUES (?, ?)",
+                filmId, difference(genreIds, storedGenreIds));
     }
 
     @Override
-    public Optional<Film> update(Film film) {
+    @Transactional
+    public Optional<FilmUpdate> update(Film film) {
         String sql = "UPDATE FILMS SET " +
                 "NAME = ?, DESCRIPTION = ?, RELEASE_DATE = ?, DURATION = ?, MPA_ID = ? " +
                 "WHERE ID = ?";
@@ -169,205 +268,250 @@ public class FilmDbStorage implements FilmStorage {
                         film.getId()) == 0) {
             return Optional.empty();
         }
+        filmCache.invalidate(film.getId());
 
         saveGenres(film);
-        saveLikes(film);
+        FilmUpdate filmUpdate = saveLikes(film);
         saveDirectors(film);
         setGenresSortedById(film);
-        return Optional.of(film);
+        return Optional.of(filmUpdate);
     }
 
-    private void saveLikes(Film film) {
-        jdbcTemplate.update("DELETE FROM FILM_LIKES WHERE FILM_ID = ?", film.getId());
+    /*
+     * a film sent without likes keeps the stored ones unread;
+     * LikeIndex takes the changed likes once the transaction commits
+     */
+    private FilmUpdate saveLikes(Film film) {
+        if (!film.hasWhoLikedUserIds()) {
+            return new FilmUpdate(film, Collections.emptyList(), Collections.emptyList());
+        }
+        int filmId = film.getId();
+        Set<Integer> whoLikedUserIds = film.getWhoLikedUserIds();
+        Set<Integer> storedUserIds = findAssociatedIds("SELECT LIKED_BY_USER_ID FROM FILM_LIKES WHERE FILM_ID = ?",
+                filmId);
+        List<Integer> removedUserIds = difference(storedUserIds, whoLikedUserIds);
+        List<Integer> addedUserIds = difference(whoLikedUserIds, storedUserIds);
+        FilmUpdate filmUpdate = new FilmUpdate(film, addedUserIds, removedUserIds);
+        if (removedUserIds.isEmpty() && addedUserIds.isEmpty()) {
+            return filmUpdate;
+        }
 
-        List<Integer> whoLikedUserIds = new ArrayList<>(film.getWhoLikedUserIds());
+        updateAssociations("DELETE FROM FILM_LIKES WHERE LIKED_BY_USER_ID = ? AND FILM_ID = ?",
+                filmId, removedUserIds);
+        updateAssociations("INSERT INTO FILM_LIKES (LIKED_BY_USER_ID, FILM_ID) VALUES (?, ?)",
+                filmId, addedUserIds);
+        jdbcTemplate.update("UPDATE FILMS SET LIKES_COUNT = ? WHERE ID = ?", whoLikedUserIds.size(), filmId);
+        removedUserIds.forEach(userId -> likeIndex.removeLike(filmId, userId));
+        addedUserIds.forEach(userId -> likeIndex.addLike(filmId, userId));
+        return filmUpdate;
+    }
 
-        String sql = "INSERT INTO FILM_LIKES (FILM_ID, LIKED_BY_USER_ID) VALUES (?, ?)";
-        int filmId = film.getId();
+    private Set<Integer> findAssociatedIds(String sql, int filmId) {
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Integer.class, filmId));
+    }
 
-        if (!whoLikedUserIds.isEmpty()) {
-            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps, int i) throws SQLException {
-                    ps.setInt(1, filmId);
-                    ps.setInt(2, whoLikedUserIds.get(i));
-                }
+    private static List<Integer> difference(Set<Integer> ids, Set<Integer> excludedIds) {
+        return ids.stream()
+                .filter(id -> !excludedIds.contains(id))
+                .collect(Collectors.toList());
+    }
 
-                @Override
-                public int getBatchSize() {
-                    return whoLikedUserIds.size();
-                }
-            });
+    /*
+     * runs the statement once per id, with the id as the first parameter and the film id as the second
+     */
+    private void updateAssociations(String sql, int filmId, List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
         }
+        jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setInt(1, ids.get(i));
+                ps.setInt(2, filmId);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return ids.size();
+            }
+        });
     }
 
     @Override
     public boolean deleteById(int filmId) {
-        return jdbcTemplate.update("DELETE FROM FILMS WHERE ID = ?", filmId) > 0;
+        if (jdbcTemplate.update("DELETE FROM FILMS WHERE ID = ?", filmId) == 0) {
+            return false;
+        }
+        filmCache.invalidate(filmId);
+        idIndex.remove(IdIndex.FILMS, filmId);
+        likeIndex.removeFilm(filmId);
+        return true;
     }
 
     @Override
-    public Optional<Film> findById(int id) {
-        String sql = FIND_ALL +
-                "WHERE FILMS.ID = ? " +
-                "GROUP BY FILMS.ID";
-        List<Film> results = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), id);
-        return results.isEmpty() ?
-                Optional.empty() :
-                Optional.of(results.get(0));
+    public boolean existsById(int id) {
+        return idIndex.mayContain(IdIndex.FILMS, id) &&
+                jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM FILMS WHERE ID = ?)", Boolean.class, id);
     }
 
     @Override
-    public Collection<Film> findTopNMostPopular(int limit, Optional<Integer> genreId, Optional<Integer> year) {
-        String sql;
-        String yearSql = "WHERE EXTRACT(YEAR from CAST(RELEASE_DATE as date)) = ? ";
-        String groupBySql = "GROUP BY FILMS.ID ";
-        String genreIdSql = "HAVING ARRAY_CONTAINS(GENRE_IDS, ?) ";
-        String limitSql = "ORDER BY COUNT(DISTINCT FL.LIKED_BY_USER_ID) DESC " +
-                "LIMIT ?";
-
-        if (genreId.isPresent() && year.isPresent()) {
-            sql = FIND_ALL + yearSql + groupBySql + genreIdSql + limitSql;
-            return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), year.get(), genreId.get(), limit);
-        } else if (genreId.isPresent()) {
-            sql = FIND_ALL + groupBySql + genreIdSql + limitSql;
-            return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), genreId.get(), limit);
-        } else if (year.isPresent()) {
-            sql = FIND_ALL + yearSql + groupBySql + limitSql;
-            return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), year.get(), limit);
+    public Optional<Film> findById(int id) {
+        Optional<Film> cachedFilm = filmCache.get(id);
+        if (cachedFilm.isPresent()) {
+            return cachedFilm;
         }
-        sql = FIND_ALL + groupBySql + limitSql;
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), limit);
+        long generation = filmCache.getGeneration();
+        String sql = FIND_ALL +
+                "WHERE FILMS.ID = ?";
+        List<Film> results = queryFilms(FilmView.full, sql, id);
+        if (results.isEmpty()) {
+            return Optional.empty();
+        }
+        filmCache.put(results.get(0), generation);
+        return Optional.of(results.get(0));
     }
 
     @Override
+    @Transactional
     public boolean addLike(int filmId, int userId) {
-        String sql = "MERGE INTO FILM_LIKES(FILM_ID, LIKED_BY_USER_ID) VALUES (?, ?)";
-        return jdbcTemplate.update(sql, filmId, userId) > 0;
+        String sql = "INSERT INTO FILM_LIKES(FILM_ID, LIKED_BY_USER_ID) " +
+                "SELECT ?, ? WHERE NOT EXISTS (" +
+                "SELECT 1 FROM FILM_LIKES WHERE FILM_ID = ? AND LIKED_BY_USER_ID = ?)";
+        if (jdbcTemplate.update(sql, filmId, userId, filmId, userId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update(CHANGE_LIKES_COUNT, 1, filmId);
+        filmCache.invalidate(filmId);
+        likeIndex.addLike(filmId, userId);
+        return true;
     }
 
     @Override
+    @Transactional
     public boolean deleteLike(int filmId, int userId) {
         String sql = "DELETE FROM FILM_LIKES " +
                 "WHERE FILM_ID = ? AND LIKED_BY_USER_ID = ?";
-        return jdbcTemplate.update(sql, filmId, userId) > 0;
+        if (jdbcTemplate.update(sql, filmId, userId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update(CHANGE_LIKES_COUNT, -1, filmId);
+        filmCache.invalidate(filmId);
+        likeIndex.removeLike(filmId, userId);
+        return true;
     }
 
+    /*
+     * a like already stored, repeated in the list or naming a missing film or user is skipped;
+     * likes counters get one update per film of the list
+     */
     @Override
-    public Collection<Film> getRecommendations(int userId) {
-        //first query to make recommendations
-        String sql1 =
-                "SELECT fl.film_id film_ids, " +
-                        "ARRAY_AGG(fl.liked_by_user_id) user_ids, " +
-                        "ARRAY_AGG(fl.liked_by_user_id/fl.liked_by_user_id) rates " +
-                        "FROM FILM_LIKES AS FL " +
-                        "GROUP BY FL.film_id";
-        Matrix matrix = jdbcTemplate.query(sql1, this::makeMatrixForRecommendations);
-        if (matrix == null) {
-            return Collections.emptyList();
+    public List<Like> addLikes(List<Like> likes) {
+        if (likes.isEmpty()) {
+            return likes;
         }
-        Recommender recommender = new Recommender(matrix, true);
-        List<Integer> recommendations = recommender.getRecommendations(userId, Optional.empty());
-        //second query for recommended films if necessary
-        if (!recommendations.isEmpty()) {
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append("(");
-            for (Integer filmId : recommendations) {
-                stringBuilder.append(filmId).append(", ");
+        String sql = "INSERT INTO FILM_LIKES(FILM_ID, LIKED_BY_USER_ID) " +
+                "SELECT ?, ? WHERE NOT EXISTS (" +
+                "SELECT 1 FROM FILM_LIKES WHERE FILM_ID = ? AND LIKED_BY_USER_ID = ?) " +
+                "AND EXISTS (SELECT 1 FROM FILMS WHERE ID = ?) " +
+                "AND EXISTS (SELECT 1 FROM USERS WHERE ID = ?)";
+        int[][] counts = jdbcTemplate.batchUpdate(sql, likes, likes.size(), (ps, like) -> {
+            ps.setInt(1, like.getFilmId());
+            ps.setInt(2, like.getUserId());
+            ps.setInt(3, like.getFilmId());
+            ps.setInt(4, like.getUserId());
+            ps.setInt(5, like.getFilmId());
+            ps.setInt(6, like.getUserId());
+        });
+        List<Like> addedLikes = new ArrayList<>();
+        for (int i = 0; i < likes.size(); i++) {
+            if (counts[0][i] > 0) {
+                addedLikes.add(likes.get(i));
             }
-            String sql2 = FIND_ALL +
-                    "WHERE FILMS.ID IN " +
-                    stringBuilder.substring(0, stringBuilder.length() - 2) + ") GROUP BY FILMS.ID";
-            return jdbcTemplate.query(sql2, (rs, rowNum) -> mapRowToFilm(rs));
-        } else {
-            return Collections.emptyList();
         }
+
+        List<Object[]> changes = addedLikes.stream()
+                .collect(groupingBy(Like::getFilmId, counting()))
+                .entrySet().stream()
+                .map(filmLikes -> new Object[]{filmLikes.getValue().intValue(), filmLikes.getKey()})
+                .collect(toList());
+        jdbcTemplate.batchUpdate(CHANGE_LIKES_COUNT, changes);
+        changes.forEach(change -> filmCache.invalidate((Integer) change[1]));
+        addedLikes.forEach(like -> likeIndex.addLike(like.getFilmId(), like.getUserId()));
+        return addedLikes;
     }
 
-    private Matrix makeMatrixForRecommendations(ResultSet rs) throws SQLException {
-        Matrix data = new Matrix();
-        try {
-            SqlArrayConverter converter = new SqlArrayConverter();
-            while (rs.next()) {
-                List<Integer> userIds = converter.convert(rs.getArray("user_ids"));
-                List<Integer> rates = converter.convert(rs.getArray("rates"));
-                for (int i = 0; i < userIds.size(); i++) {
-                    data.writeValue(rs.getInt("film_ids"), userIds.get(i), Optional.of(rates.get(i).doubleValue()));
+    /*
+     * cached films are full ones; a summary reads missing films without FILM_LIKES and does not cache them,
+     * so heavily liked films, too heavy for the cache, cost no likes read
+     */
+    @Override
+    public Collection<Film> findByIds(List<Integer> ids, FilmView view) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, Film> films = new HashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        for (int id : ids) {
+            filmCache.get(id).ifPresentOrElse(film -> films.put(id, film), () -> missingIds.add(id));
+        }
+        if (!missingIds.isEmpty()) {
+            long generation = filmCache.getGeneration();
+            String sql = FIND_ALL +
+                    "WHERE FILMS.ID IN (" + placeholders(missingIds.size()) + ")";
+            for (Film film : queryFilms(view, sql, missingIds.toArray())) {
+                if (view.hasLikes()) {
+                    filmCache.put(film, generation);
                 }
+                films.put(film.getId(), film);
             }
-            return data;
-        } catch (EmptyResultDataAccessException exp) {
-            return null;
         }
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(toList());
+    }
+
+    @Override
+    public Matrix findLikesMatrix() {
+        String sql = "SELECT FILM_ID, LIKED_BY_USER_ID FROM FILM_LIKES";
+        return jdbcTemplate.query(sql, rs -> {
+            Matrix likes = new Matrix();
+            while (rs.next()) {
+                likes.writeValue(rs.getInt("FILM_ID"), rs.getInt("LIKED_BY_USER_ID"), 1);
+            }
+            return likes;
+        });
     }
 
     @Override
     public Collection<Film> findCommonFilms(int userId, int friendId) {
-        String sql = FIND_ALL +
-                "GROUP BY FILMS.ID " +
-                "HAVING ARRAY_CONTAINS(LIKES, ?) AND ARRAY_CONTAINS(LIKES, ?) " +
-                "ORDER BY LIKES DESC";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), userId, friendId);
+        List<Integer> ids = Arrays.stream(likeIndex.findCommonFilms(userId, friendId))
+                .boxed()
+                .sorted(Comparator.<Integer>comparingInt(likeIndex::getLikesCount).reversed())
+                .collect(toList());
+        return findByIds(ids, FilmView.full);
     }
 
     @Override
-    public Collection<Film> getFilmsByDirector(int directorId, SortBy sortBy) {
+    public Collection<Film> getFilmsByDirector(int directorId, SortBy sortBy, FilmView view) {
         String sql = FIND_ALL +
-                "WHERE DIRECTOR_ID = ? " +
-                "GROUP BY FILMS.ID ";
-        String sqlSortBy = "ORDER BY LIKES DESC";
+                "WHERE FILMS.ID IN (SELECT FILM_ID FROM FILM_DIRECTOR WHERE DIRECTOR_ID = ?) ";
+        String sqlSortBy = "ORDER BY FILMS.LIKES_COUNT DESC, FILMS.ID";
         if (sortBy == SortBy.year) {
-            sqlSortBy = "ORDER BY YEAR(RELEASE_DATE)";
+            sqlSortBy = "ORDER BY FILMS.RELEASE_DATE, FILMS.ID";
         }
-        return jdbcTemplate.query(sql + sqlSortBy, (rs, rowNum) -> mapRowToFilm(rs), directorId);
+        return queryFilms(view, sql + sqlSortBy, directorId);
     }
 
     private void saveDirectors(Film film) {
-        jdbcTemplate.update("DELETE FROM FILM_DIRECTOR WHERE FILM_ID = ?", film.getId());
-        List<Director> directors = new ArrayList<>(film.getDirectors());
         int filmId = film.getId();
-        String sql = "INSERT INTO FILM_DIRECTOR(DIRECTOR_ID, FILM_ID) VALUES (?,?) ";
-
-        if (!directors.isEmpty()) {
-            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps, int i) throws SQLException {
-                    ps.setInt(1, directors.get(i).getId());
-                    ps.setInt(2, filmId);
-                }
-
-                @Override
-                public int getBatchSize() {
-                    return directors.size();
-                }
-            });
-        }
-    }
-
-    @Override
-    public Collection<Film> searchForFilmsByTitle(String query) {
-        String sql = FIND_ALL +
-                "WHERE FILMS.NAME ILIKE ? " +
-                "GROUP BY FILMS.ID " +
-                "ORDER BY FILMS.ID DESC";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), "%" + query + "%");
-    }
-
-    @Override
-    public Collection<Film> searchForFilmsByDirector(String query) {
-        String sql = FIND_ALL +
-                "WHERE D.NAME ILIKE ? " +
-                "GROUP BY FILMS.ID " +
-                "ORDER BY FILMS.ID DESC";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), "%" + query + "%");
-    }
-
-    @Override
-    public Collection<Film> searchForFilmsByDirectorAndTitle(String query) {
-        String sql = FIND_ALL +
-                "WHERE D.NAME ILIKE ? OR FILMS.NAME ILIKE ? " +
-                "GROUP BY FILMS.ID " +
-                "ORDER BY FILMS.ID DESC";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToFilm(rs), "%" + query + "%", "%" + query + "%");
+        Set<Integer> directorIds = film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet());
+        Set<Integer> storedDirectorIds = findAssociatedIds("SELECT DIRECTOR_ID FROM FILM_DIRECTOR WHERE FILM_ID = ?",
+                filmId);
+
+        updateAssociations("DELETE FROM FILM_DIRECTOR WHERE DIRECTOR_ID = ? AND FILM_ID = ?",
+                filmId, difference(storedDirectorIds, directorIds));
+        updateAssociations("INSERT INTO FILM_DIRECTOR (DIRECTOR_ID, FILM_ID) VALUES (?, ?)",
+                filmId, difference(directorIds, storedDirectorIds));
     }
 }
@@ -1,24 +1,32 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmUpdate;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.SortBy;
+import ru.yandex.practicum.filmorate.utilities.recommendations.Matrix;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Collection<Film> findAll();
+    Collection<Film> findPage(int afterId, int limit, FilmView view);
+    void forEach(FilmView view, Consumer<Film> action);
     Film save(Film film);
-    Optional<Film> update(Film film);
+    List<Film> saveAll(List<Film> films);
+    Optional<FilmUpdate> update(Film film);
     boolean deleteById(int filmId);
     Optional<Film> findById(int id);
-    Collection<Film> findTopNMostPopular(int limit, Optional<Integer> genreId, Optional<Integer> year);
+    boolean existsById(int id);
+    Collection<Film> findByIds(List<Integer> ids, FilmView view);
     boolean addLike(int filmId, int userId);
     boolean deleteLike(int filmId, int userId);
-    Collection<Film> getRecommendations(int userId);
+    List<Like> addLikes(List<Like> likes);
+    Matrix findLikesMatrix();
     Collection<Film> findCommonFilms(int userId, int friendId);
-    Collection<Film> getFilmsByDirector (int directorId, SortBy sortBy);
-    Collection<Film> searchForFilmsByTitle(String query);
-    Collection<Film> searchForFilmsByDirector(String query);
-    Collection<Film> searchForFilmsByDirectorAndTitle(String query);
+    Collection<Film> getFilmsByDirector (int directorId, SortBy sortBy, FilmView view);
 }
@@ -2,17 +2,21 @@ package ru.yandex.practicum.filmorate.storage.film;
 
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmUpdate;
+import ru.yandex.practicum.filmorate.model.FilmView;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.SortBy;
+import ru.yandex.practicum.filmorate.utilities.recommendations.Matrix;
 
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.toList;
 
 @Repository
 public class InMemoryFilmStorage implements FilmStorage {
     private static final Comparator<Film> BY_LIKES_DESC = Comparator.comparingInt(Film::getLikesCount).reversed();
-    private static final Comparator<Film> BY_FILM_ID_DESC = Comparator.comparingInt(Film::getId).reversed();
+    private static final Comparator<Film> BY_FILM_ID = Comparator.comparingInt(Film::getId);
     private final Map<Integer, Film> films;
 
     public InMemoryFilmStorage() {
@@ -23,15 +27,54 @@ public class InMemoryFilmStorage implements FilmStorage {
         return films.values();
     }
 
+    @Override
+    public Collection<Film> findPage(int afterId, int limit, FilmView view) {
+        return films.values().stream()
+                .filter(film -> film.getId() > afterId)
+                .sorted(BY_FILM_ID)
+                .limit(limit)
+                .collect(toList());
+    }
+
+    @Override
+    public void forEach(FilmView view, Consumer<Film> action) {
+        films.values().stream()
+                .sorted(BY_FILM_ID)
+                .forEach(action);
+    }
+
+    @Override
+    public boolean existsById(int id) {
+        return films.containsKey(id);
+    }
+
     public Film save(Film film) {
         films.put(film.getId(), film);
         return film;
     }
 
-    public Optional<Film> update(Film film) {
-        return films.replace(film.getId(), film) == null ?
-                Optional.empty() :
-                Optional.of(film);
+    @Override
+    public List<Film> saveAll(List<Film> films) {
+        films.forEach(this::save);
+        return films;
+    }
+
+    public Optional<FilmUpdate> update(Film film) {
+        Film oldFilm = films.replace(film.getId(), film);
+        if (oldFilm == null) {
+            return Optional.empty();
+        }
+        if (!film.hasWhoLikedUserIds()) {
+            film.setWhoLikedUserIds(new HashSet<>(oldFilm.getWhoLikedUserIds()));
+            return Optional.of(new FilmUpdate(film, Collections.emptyList(), Collections.emptyList()));
+        }
+        List<Integer> addedUserIds = film.getWhoLikedUserIds().stream()
+                .filter(userId -> !oldFilm.getWhoLikedUserIds().contains(userId))
+                .collect(toList());
+        List<Integer> removedUserIds = oldFilm.getWhoLikedUserIds().stream()
+                .filter(userId -> !film.getWhoLikedUserIds().contains(userId))
+                .collect(toList());
+        return Optional.of(new FilmUpdate(film, addedUserIds, removedUserIds));
     }
 
     public boolean deleteById(int filmId) {
@@ -45,31 +88,6 @@ public class InMemoryFilmStorage implements FilmStorage {
                 Optional.of(film);
     }
 
-    @Override
-    public Collection<Film> findTopNMostPopular(int limit, Optional<Integer> genreId, Optional<Integer> year) {
-        Predicate<Film> p = film -> true;
-        if (genreId.isPresent() && year.isPresent()) {
-            p = film -> isReleaseYearEquals(year.get(), film) && hasGenreId(genreId.get(), film);
-        } else if (genreId.isPresent()) {
-            p = film -> hasGenreId(genreId.get(), film);
-        } else if (year.isPresent()) {
-            p = film -> isReleaseYearEquals(year.get(), film);
-        }
-        return films.values().stream()
-                .filter(p)
-                .sorted(BY_LIKES_DESC)
-                .limit(limit)
-                .collect(toList());
-    }
-
-    private boolean hasGenreId(int genreId, Film film) {
-        return film.getGenres().stream().anyMatch(genre -> genre.getId() == genreId);
-    }
-
-    private boolean isReleaseYearEquals(int year, Film film) {
-        return getYear(film) == year;
-    }
-
     private int getYear(Film film) {
         return film.getReleaseDate().getYear();
     }
@@ -92,8 +110,32 @@ public class InMemoryFilmStorage implements FilmStorage {
         return true;
     }
 
-    public Collection<Film> getRecommendations(int userId) {
-        return Collections.emptyList();
+    @Override
+    public List<Like> addLikes(List<Like> likes) {
+        return likes.stream()
+                .filter(like -> films.containsKey(like.getFilmId()) &&
+                        !films.get(like.getFilmId()).getWhoLikedUserIds().contains(like.getUserId()))
+                .filter(like -> addLike(like.getFilmId(), like.getUserId()))
+                .collect(toList());
+    }
+
+    @Override
+    public Collection<Film> findByIds(List<Integer> ids, FilmView view) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(toList());
+    }
+
+    @Override
+    public Matrix findLikesMatrix() {
+        Matrix likes = new Matrix();
+        for (Film film : films.values()) {
+            for (int userId : film.getWhoLikedUserIds()) {
+                likes.writeValue(film.getId(), userId, 1);
+            }
+        }
+        return likes;
     }
 
     public Collection<Film> findCommonFilms(int userId, int friendId) {
@@ -104,7 +146,7 @@ public class InMemoryFilmStorage implements FilmStorage {
                 .collect(toList());
     }
 
-    public Collection<Film> getFilmsByDirector(int directorId, SortBy sortBy) {
+    public Collection<Film> getFilmsByDirector(int directorId, SortBy sortBy, FilmView view) {
         Comparator<Film> c = BY_LIKES_DESC;
         if (sortBy == SortBy.year) {
             c = Comparator.comparingInt(this::getYear).reversed();
@@ -118,37 +160,4 @@ public class InMemoryFilmStorage implements FilmStorage {
     private boolean hasDirectorId(int directorId, Film film) {
         return film.getDirectors().stream().anyMatch(director -> director.getId() == directorId);
     }
-
-    @Override
-    public Collection<Film> searchForFilmsByTitle(String query) {
-        return films.values().stream()
-                .filter(film -> isFilmTitleContains(query, film))
-                .sorted(BY_FILM_ID_DESC)
-                .collect(toList());
-    }
-
-    private boolean isFilmTitleContains(String query, Film film) {
-        return film.getName().toLowerCase().contains(query.toLowerCase());
-    }
-
-    @Override
-    public Collection<Film> searchForFilmsByDirector(String query) {
-        return films.values().stream()
-                .filter(film -> isDirectorNameContains(query, film))
-                .sorted(BY_FILM_ID_DESC)
-                .collect(toList());
-    }
-
-    private boolean isDirectorNameContains(String query, Film film) {
-        return film.getDirectors().stream()
-                .anyMatch(director -> director.getName().toLowerCase().contains(query.toLowerCase()));
-    }
-
-    @Override
-    public Collection<Film> searchForFilmsByDirectorAndTitle(String query) {
-        return films.values().stream()
-                .filter(film -> isFilmTitleContains(query, film) || isDirectorNameContains(query, film))
-                .sorted(BY_FILM_ID_DESC)
-                .collect(toList());
-    }
 }
@@ -0,0 +1,139 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.IndexGuard;
+import ru.yandex.practicum.filmorate.utilities.bitmap.IntBitmap;
+
+import java.util.*;
+
+/**
+ * In-memory copy of FILM_LIKES as compressed bitmaps: users who liked each film and films liked by each user.
+ * Loaded from the database on first use, then kept in sync by the storages that change likes,
+ * each change applied once its transaction commits.
+ */
+@Component
+@RequiredArgsConstructor
+public class LikeIndex {
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, IntBitmap> filmLikers = new HashMap<>();
+    private final Map<Integer, IntBitmap> userFilms = new HashMap<>();
+    private final IndexGuard guard = new IndexGuard(this::readLikes, this::clear);
+
+    public void addLike(int filmId, int userId) {
+        guard.update(() -> {
+            filmLikers.computeIfAbsent(filmId, id -> new IntBitmap()).add(userId);
+            userFilms.computeIfAbsent(userId, id -> new IntBitmap()).add(filmId);
+        });
+    }
+
+    public void removeLike(int filmId, int userId) {
+        guard.update(() -> {
+            removeFrom(filmLikers, filmId, userId);
+            removeFrom(userFilms, userId, filmId);
+        });
+    }
+
+    public void removeFilm(int filmId) {
+        guard.update(() -> {
+            IntBitmap likers = filmLikers.remove(filmId);
+            if (likers != null) {
+                for (int userId : likers.toArray()) {
+                    removeFrom(userFilms, userId, filmId);
+                }
+            }
+        });
+    }
+
+    public void removeUser(int userId) {
+        guard.update(() -> {
+            IntBitmap films = userFilms.remove(userId);
+            if (films != null) {
+                for (int filmId : films.toArray()) {
+                    removeFrom(filmLikers, filmId, userId);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return ids of the films liked by both users, ascending
+     */
+    public int[] findCommonFilms(int userId, int otherUserId) {
+        return guard.read(() -> {
+            IntBitmap films = userFilms.get(userId);
+            IntBitmap otherFilms = userFilms.get(otherUserId);
+            if (films == null || otherFilms == null) {
+                return new int[0];
+            }
+            return films.and(otherFilms).toArray();
+        });
+    }
+
+    /**
+     * @return ids of the films liked by the user, ascending
+     */
+    public int[] getFilms(int userId) {
+        return guard.read(() -> {
+            IntBitmap films = userFilms.get(userId);
+            return films == null ? new int[0] : films.toArray();
+        });
+    }
+
+    public int getLikesCount(int filmId) {
+        return guard.read(() -> {
+            IntBitmap likers = filmLikers.get(filmId);
+            return likers == null ? 0 : likers.cardinality();
+        });
+    }
+
+    /**
+     * @return share of users who liked both films among users who liked any of them, 0 if nobody did
+     */
+    public double findJaccardSimilarity(int filmId1, int filmId2) {
+        return guard.read(() -> {
+            IntBitmap likers1 = filmLikers.get(filmId1);
+            IntBitmap likers2 = filmLikers.get(filmId2);
+            if (likers1 == null || likers2 == null) {
+                return 0.0;
+            }
+            int common = likers1.andCardinality(likers2);
+            return (double) common / (likers1.cardinality() + likers2.cardinality() - common);
+        });
+    }
+
+    /**
+     * Drops the index, it is loaded anew on the next read; needed when FILM_LIKES is changed past the storages.
+     */
+    public void reload() {
+        guard.reload();
+    }
+
+    private Runnable readLikes() {
+        Map<Integer, IntBitmap> likers = new HashMap<>();
+        Map<Integer, IntBitmap> films = new HashMap<>();
+        jdbcTemplate.query("SELECT FILM_ID, LIKED_BY_USER_ID FROM FILM_LIKES", rs -> {
+            int filmId = rs.getInt("FILM_ID");
+            int userId = rs.getInt("LIKED_BY_USER_ID");
+            likers.computeIfAbsent(filmId, id -> new IntBitmap()).add(userId);
+            films.computeIfAbsent(userId, id -> new IntBitmap()).add(filmId);
+        });
+        return () -> {
+            filmLikers.putAll(likers);
+            userFilms.putAll(films);
+        };
+    }
+
+    private void clear() {
+        filmLikers.clear();
+        userFilms.clear();
+    }
+
+    private static void removeFrom(Map<Integer, IntBitmap> bitmaps, int key, int value) {
+        IntBitmap bitmap = bitmaps.get(key);
+        if (bitmap != null && bitmap.remove(value) && bitmap.isEmpty()) {
+            bitmaps.remove(key);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.storage.IdIndex;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -26,12 +27,19 @@ public class ReviewDbStorage implements ReviewStorage {
     private static final String FIND_ALL = "SELECT * FROM REVIEWS ";
 
     private final JdbcTemplate jdbcTemplate;
+    private final IdIndex idIndex;
 
     @Override
     public Collection<Review> findAll() {
         return jdbcTemplate.query(FIND_ALL, (resultSet, rowNum) -> mapRowToReview(resultSet));
     }
 
+    @Override
+    public boolean existsById(int id) {
+        return idIndex.mayContain(IdIndex.REVIEWS, id) &&
+               jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM REVIEWS WHERE ID = ?)", Boolean.class, id);
+    }
+
     @Override
     public Optional<Review> findById(int id) {
         String sql = FIND_ALL +
@@ -69,6 +77,7 @@ public class ReviewDbStorage implements ReviewStorage {
 
         int reviewId = keyHolder.getKey().intValue();
         review.setReviewId(reviewId);
+        idIndex.add(IdIndex.REVIEWS, reviewId);
         return review;
     }
 
@@ -90,7 +99,11 @@ public class ReviewDbStorage implements ReviewStorage {
 
     @Override
     public boolean deleteById(int id) {
-        return jdbcTemplate.update("DELETE FROM REVIEWS WHERE ID = ?", id) > 0;
+        if (jdbcTemplate.update("DELETE FROM REVIEWS WHERE ID = ?", id) == 0) {
+            return false;
+        }
+        idIndex.remove(IdIndex.REVIEWS, id);
+        return true;
     }
 
     @Override
@@ -10,6 +10,8 @@ public interface ReviewStorage {
 
     Optional<Review> findById(int id);
 
+    boolean existsById(int id);
+
     Review save(Review review);
 
     Optional<Review> update(Review newReview);
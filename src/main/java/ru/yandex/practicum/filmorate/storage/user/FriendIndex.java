@@ -0,0 +1,164 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.IndexGuard;
+
+import java.util.*;
+
+/**
+ * In-memory copy of USER_FRIENDS as sorted int arrays: friends of each user and users who added each user.
+ * Arrays are replaced on change and never modified, so a returned array stays valid after later changes.
+ * Loaded from the database at startup or on first use, then kept in sync by the storage that changes friends,
+ * each change applied once its transaction commits.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FriendIndex {
+    private static final int[] NO_USERS = new int[0];
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Integer, int[]> friends = new HashMap<>();
+    private final Map<Integer, int[]> followers = new HashMap<>();
+    private final IndexGuard guard = new IndexGuard(this::readFriends, this::clear);
+
+    public void addFriend(int userId, int friendId) {
+        guard.update(() -> {
+            friends.put(userId, insert(friends.getOrDefault(userId, NO_USERS), friendId));
+            followers.put(friendId, insert(followers.getOrDefault(friendId, NO_USERS), userId));
+        });
+    }
+
+    public void removeFriend(int userId, int friendId) {
+        guard.update(() -> {
+            removeFrom(friends, userId, friendId);
+            removeFrom(followers, friendId, userId);
+        });
+    }
+
+    public void removeUser(int userId) {
+        guard.update(() -> {
+            for (int friendId : friends.getOrDefault(userId, NO_USERS)) {
+                removeFrom(followers, friendId, userId);
+            }
+            for (int followerId : followers.getOrDefault(userId, NO_USERS)) {
+                removeFrom(friends, followerId, userId);
+            }
+            friends.remove(userId);
+            followers.remove(userId);
+        });
+    }
+
+    /**
+     * @return ids of the friends of the user, ascending; the array must not be modified
+     */
+    public int[] getFriends(int userId) {
+        return guard.read(() -> friends.getOrDefault(userId, NO_USERS));
+    }
+
+    /**
+     * @return ids of the users who are friends of both users, ascending
+     */
+    public int[] findCommonFriends(int userId, int otherUserId) {
+        return guard.read(() -> {
+            int[] first = friends.getOrDefault(userId, NO_USERS);
+            int[] second = friends.getOrDefault(otherUserId, NO_USERS);
+            int[] common = new int[Integer.min(first.length, second.length)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < first.length && j < second.length) {
+                if (first[i] < second[j]) {
+                    i++;
+                } else if (first[i] > second[j]) {
+                    j++;
+                } else {
+                    common[count++] = first[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(common, count);
+        });
+    }
+
+    /**
+     * Drops the index, it is loaded anew on the next read; needed when USER_FRIENDS is changed past the storages.
+     */
+    public void reload() {
+        guard.reload();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            guard.load();
+        } catch (DataAccessException e) {
+            log.warn("Не удалось загрузить друзей пользователей: {}", e.getMessage());
+        }
+    }
+
+    private Runnable readFriends() {
+        Map<Integer, List<Integer>> userFriends = new HashMap<>();
+        Map<Integer, List<Integer>> userFollowers = new HashMap<>();
+        jdbcTemplate.query("SELECT USER_ID, FRIEND_ID FROM USER_FRIENDS ORDER BY USER_ID, FRIEND_ID", rs -> {
+            int userId = rs.getInt("USER_ID");
+            int friendId = rs.getInt("FRIEND_ID");
+            userFriends.computeIfAbsent(userId, id -> new ArrayList<>()).add(friendId);
+            userFollowers.computeIfAbsent(friendId, id -> new ArrayList<>()).add(userId);
+        });
+        log.debug("Загружены друзья пользователей: пользователей с друзьями {}", userFriends.size());
+        // rows come sorted by user and friend, so both kinds of lists are already in ascending order
+        return () -> {
+            userFriends.forEach((userId, ids) -> friends.put(userId, toArray(ids)));
+            userFollowers.forEach((userId, ids) -> followers.put(userId, toArray(ids)));
+        };
+    }
+
+    private void clear() {
+        friends.clear();
+        followers.clear();
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void removeFrom(Map<Integer, int[]> lists, int key, int value) {
+        int[] ids = lists.get(key);
+        if (ids == null) {
+            return;
+        }
+        int index = Arrays.binarySearch(ids, value);
+        if (index < 0) {
+            return;
+        }
+        if (ids.length == 1) {
+            lists.remove(key);
+            return;
+        }
+        int[] rest = new int[ids.length - 1];
+        System.arraycopy(ids, 0, rest, 0, index);
+        System.arraycopy(ids, index + 1, rest, index, rest.length - index);
+        lists.put(key, rest);
+    }
+
+    private static int[] insert(int[] ids, int value) {
+        int index = Arrays.binarySearch(ids, value);
+        if (index >= 0) {
+            return ids;
+        }
+        int position = -index - 1;
+        int[] extended = new int[ids.length + 1];
+        System.arraycopy(ids, 0, extended, 0, position);
+        extended[position] = value;
+        System.arraycopy(ids, position, extended, position + 1, ids.length - position);
+        return extended;
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.*;
 
@@ -20,12 +21,39 @@ public class InMemoryUserStorage implements UserStorage {
         return users.values();
     }
 
+    @Override
+    public Collection<User> findPage(int afterId, int limit) {
+        return users.values().stream()
+                .filter(user -> user.getId() > afterId)
+                .sorted(Comparator.comparingInt(User::getId))
+                .limit(limit)
+                .collect(toList());
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        users.values().stream()
+                .sorted(Comparator.comparingInt(User::getId))
+                .forEach(action);
+    }
+
+    @Override
+    public boolean existsById(int id) {
+        return users.containsKey(id);
+    }
+
     @Override
     public User save(User user) {
         users.put(user.getId(), user);
         return user;
     }
 
+    @Override
+    public List<User> saveAll(List<User> users) {
+        users.forEach(this::save);
+        return users;
+    }
+
     @Override
     public Optional<User> update(User user) {
         return users.replace(user.getId(), user) == null ?
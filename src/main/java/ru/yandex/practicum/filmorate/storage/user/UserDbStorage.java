@@ -1,56 +1,99 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.IdIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.LikeIndex;
 
 import java.sql.*;
 import java.sql.Date;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.toSet;
 
 @Repository
 @RequiredArgsConstructor
 public class UserDbStorage implements UserStorage {
+    /*
+     * friends are taken from FriendIndex, so users are read without joining USER_FRIENDS
+     */
     private static final String FIND_ALL =
-            "SELECT USERS.*, " +
-                   "ARRAY_AGG(UF.FRIEND_ID) AS FRIENDS_IDS " +
-            "FROM USERS " +
-            "LEFT JOIN USER_FRIENDS UF on USERS.ID = UF.USER_ID ";
+            "SELECT * " +
+            "FROM USERS ";
+    private static final int FETCH_SIZE = 1000;
+    private static final int MAX_IDS_PER_QUERY = 1000;
 
     private final JdbcTemplate jdbcTemplate;
+    private final LikeIndex likeIndex;
+    private final FilmCache filmCache;
+    private final IdIndex idIndex;
+    private final FriendIndex friendIndex;
 
     @Override
     public Collection<User> findAll() {
         String sql = FIND_ALL +
-                    "GROUP BY USERS.ID";
+                    "ORDER BY ID";
         return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs));
     }
 
+    @Override
+    public Collection<User> findPage(int afterId, int limit) {
+        String sql = FIND_ALL +
+                "WHERE ID > ? " +
+                "ORDER BY ID " +
+                "LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs), afterId, limit);
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        String sql = FIND_ALL +
+                "ORDER BY ID";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(FETCH_SIZE);
+            return stmt;
+        }, (RowCallbackHandler) rs -> action.accept(mapRowToUser(rs)));
+    }
+
     private User mapRowToUser(ResultSet rs) throws SQLException {
         int id = rs.getInt("ID");
         String email = rs.getString("EMAIL");
         String login = rs.getString("LOGIN");
         String name = rs.getString("NAME");
         LocalDate birthday = rs.getDate("BIRTHDAY").toLocalDate();
-        Set<Integer> friendsIds = getSetOfFriendsIds(rs);
+        Set<Integer> friendsIds = Arrays.stream(friendIndex.getFriends(id))
+                .boxed()
+                .collect(toSet());
         return new User(id, friendsIds, email, login, name, birthday);
     }
 
-    private Set<Integer> getSetOfFriendsIds(ResultSet rs) throws SQLException {
-        Array idsArr = rs.getArray("FRIENDS_IDS");
-        Object[] values = (Object[]) idsArr.getArray();
-        if (values[0] == null) {
-            return Collections.emptySet();
+    /*
+     * ids are ascending, so are the users; long lists are read in several queries
+     */
+    private List<User> findByIds(int[] ids) {
+        List<User> users = new ArrayList<>(ids.length);
+        for (int from = 0; from < ids.length; from += MAX_IDS_PER_QUERY) {
+            Object[] chunk = Arrays.stream(ids, from, Integer.min(ids.length, from + MAX_IDS_PER_QUERY))
+                    .boxed()
+                    .toArray();
+            String sql = FIND_ALL +
+                        "WHERE ID IN (" + String.join(", ", Collections.nCopies(chunk.length, "?")) + ") " +
+                        "ORDER BY ID";
+            users.addAll(jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs), chunk));
         }
-        return Arrays.stream(values)
-                .map(value -> (Integer) value)
-                .collect(toSet());
+        return users;
     }
 
     @Override
@@ -70,9 +113,43 @@ public class UserDbStorage implements UserStorage {
 
         int userId = keyHolder.getKey().intValue();
         user.setId(userId);
+        idIndex.add(IdIndex.USERS, userId);
         return user;
     }
 
+    /*
+     * users are inserted with one batch, the caller holds the transaction
+     */
+    @Override
+    public List<User> saveAll(List<User> users) {
+        if (users.isEmpty()) {
+            return users;
+        }
+        String sql = "INSERT INTO USERS (EMAIL, LOGIN, NAME, BIRTHDAY) " +
+                     "VALUES (?, ?, ?, ?)";
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement stmt = connection.prepareStatement(sql, new String[] {"ID"})) {
+                for (User user : users) {
+                    stmt.setString(1, user.getEmail());
+                    stmt.setString(2, user.getLogin());
+                    stmt.setString(3, user.getName());
+                    stmt.setDate(4, Date.valueOf(user.getBirthday()));
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    for (User user : users) {
+                        keys.next();
+                        user.setId(keys.getInt(1));
+                    }
+                }
+            }
+            return null;
+        });
+        users.forEach(user -> idIndex.add(IdIndex.USERS, user.getId()));
+        return users;
+    }
+
     @Override
     public Optional<User> update(User user) {
         String sql = "UPDATE USERS " +
@@ -89,17 +166,36 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    @Transactional
     public boolean deleteById(int id) {
+        int[] likedFilmIds = likeIndex.getFilms(id);
+        String likedFilms = "SELECT FILM_ID FROM FILM_LIKES WHERE LIKED_BY_USER_ID = ?";
+        jdbcTemplate.update("UPDATE FILMS SET LIKES_COUNT = LIKES_COUNT - 1 " +
+                "WHERE ID IN (" + likedFilms + ")", id);
         String sql = "DELETE FROM USERS " +
                      "WHERE ID = ?";
-        return jdbcTemplate.update(sql, id) > 0;
+        if (jdbcTemplate.update(sql, id) == 0) {
+            return false;
+        }
+        likeIndex.removeUser(id);
+        friendIndex.removeUser(id);
+        idIndex.remove(IdIndex.USERS, id);
+        for (int filmId : likedFilmIds) {
+            filmCache.invalidate(filmId);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean existsById(int id) {
+        return idIndex.mayContain(IdIndex.USERS, id) &&
+               jdbcTemplate.queryForObject("SELECT EXISTS(SELECT 1 FROM USERS WHERE ID = ?)", Boolean.class, id);
     }
 
     @Override
     public Optional<User> findById(int id) {
         String sql = FIND_ALL +
-                    "WHERE USERS.ID = ? " +
-                    "GROUP BY USERS.ID";
+                    "WHERE ID = ?";
         List<User> results = jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs), id);
         return results.isEmpty() ?
                 Optional.empty() :
@@ -108,34 +204,33 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public List<User> findFriendsById(int id) {
-        String sql = FIND_ALL +
-                    "INNER JOIN USER_FRIENDS U on USERS.ID = U.FRIEND_ID " +
-                    "WHERE U.USER_ID = ? " +
-                    "GROUP BY USERS.ID";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs), id);
+        return findByIds(friendIndex.getFriends(id));
     }
 
     @Override
     public boolean addFriend(int userId, int friendId) {
         String sql = "MERGE INTO USER_FRIENDS(USER_ID, FRIEND_ID) " +
                      "VALUES (?, ?)";
-        return jdbcTemplate.update(sql, userId, friendId) > 0;
+        if (jdbcTemplate.update(sql, userId, friendId) == 0) {
+            return false;
+        }
+        friendIndex.addFriend(userId, friendId);
+        return true;
     }
 
     @Override
     public boolean removeFriend(int userId, int friendId) {
         String sql = "DELETE FROM USER_FRIENDS " +
                      "WHERE USER_ID = ? AND FRIEND_ID = ?";
-        return jdbcTemplate.update(sql, userId, friendId) > 0;
+        if (jdbcTemplate.update(sql, userId, friendId) == 0) {
+            return false;
+        }
+        friendIndex.removeFriend(userId, friendId);
+        return true;
     }
 
     @Override
     public List<User> findCommonFriendsByIds(int firstUserId, int secondUserId) {
-        String sql = FIND_ALL +
-                    "JOIN USER_FRIENDS U on USERS.ID = U.FRIEND_ID " +
-                    "JOIN USER_FRIENDS F on USERS.ID = F.FRIEND_ID " +
-                    "WHERE U.USER_ID = ? AND F.USER_ID = ? " +
-                    "GROUP BY USERS.ID";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> mapRowToUser(rs), firstUserId, secondUserId);
+        return findByIds(friendIndex.findCommonFriends(firstUserId, secondUserId));
     }
 }
@@ -5,13 +5,18 @@ import ru.yandex.practicum.filmorate.model.User;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     Collection<User> findAll();
+    Collection<User> findPage(int afterId, int limit);
+    void forEach(Consumer<User> action);
     User save(User user);
+    List<User> saveAll(List<User> users);
     Optional<User> update(User user);
     boolean deleteById(int id);
     Optional<User> findById(int id);
+    boolean existsById(int id);
     List<User> findFriendsById(int id);
     boolean addFriend(int userId, int friendId);
     boolean removeFriend(int userId, int friendId);
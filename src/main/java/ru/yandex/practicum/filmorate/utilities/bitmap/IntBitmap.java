@@ -0,0 +1,350 @@
+package ru.yandex.practicum.filmorate.utilities.bitmap;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative ints in the manner of Roaring bitmaps.
+ * Values are grouped by their high 16 bits, every group (container) keeps the low 16 bits either
+ * as a sorted char array while it has at most 4096 values or as a bitset of 1024 longs otherwise.
+ * Intersections go container by container: a sorted array is checked against the other container,
+ * two bitsets are ANDed word by word.
+ * Not thread-safe.
+ */
+public class IntBitmap {
+    private static final int ARRAY_LIMIT = 4096;
+    private static final int BITSET_WORDS = 1 << 10;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int containersCount;
+
+    public boolean add(int value) {
+        char key = highBits(value);
+        int index = findContainer(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        int cardinality = containers[index].cardinality();
+        containers[index] = containers[index].add(lowBits(value));
+        return containers[index].cardinality() > cardinality;
+    }
+
+    public boolean remove(int value) {
+        int index = findContainer(highBits(value));
+        if (index < 0) {
+            return false;
+        }
+        int cardinality = containers[index].cardinality();
+        containers[index] = containers[index].remove(lowBits(value));
+        int newCardinality = containers[index].cardinality();
+        if (newCardinality == 0) {
+            removeContainer(index);
+        }
+        return newCardinality < cardinality;
+    }
+
+    public boolean contains(int value) {
+        int index = findContainer(highBits(value));
+        return index >= 0 && containers[index].contains(lowBits(value));
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < containersCount; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return containersCount == 0;
+    }
+
+    public IntBitmap and(IntBitmap other) {
+        IntBitmap result = new IntBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < containersCount && j < other.containersCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.insertContainer(result.containersCount, keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public int andCardinality(IntBitmap other) {
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < containersCount && j < other.containersCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                cardinality += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return values ascending
+     */
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int position = 0;
+        for (int i = 0; i < containersCount; i++) {
+            position = containers[i].copyTo(values, position, keys[i] << 16);
+        }
+        return values;
+    }
+
+    private static char highBits(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static char lowBits(int value) {
+        return (char) value;
+    }
+
+    private int findContainer(char key) {
+        return Arrays.binarySearch(keys, 0, containersCount, key);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (containersCount == keys.length) {
+            int capacity = Integer.max(4, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containersCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containersCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        containersCount++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containersCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containersCount - index - 1);
+        containers[--containersCount] = null;
+    }
+
+    private interface Container {
+        Container add(char value);
+
+        Container remove(char value);
+
+        boolean contains(char value);
+
+        int cardinality();
+
+        Container and(Container other);
+
+        int andCardinality(Container other);
+
+        int copyTo(int[] target, int position, int high);
+    }
+
+    private static class ArrayContainer implements Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return toBitset().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Integer.min(Integer.max(values.length * 2, 4), ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other) {
+            char[] result = new char[Integer.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+            return and(other).cardinality();
+        }
+
+        @Override
+        public int copyTo(int[] target, int position, int high) {
+            for (int i = 0; i < cardinality; i++) {
+                target[position++] = high | values[i];
+            }
+            return position;
+        }
+
+        private BitsetContainer toBitset() {
+            BitsetContainer bitset = new BitsetContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitset.add(values[i]);
+            }
+            return bitset;
+        }
+    }
+
+    private static class BitsetContainer implements Container {
+        private final long[] words = new long[BITSET_WORDS];
+        private int cardinality;
+
+        @Override
+        public Container add(char value) {
+            long word = words[value >>> 6];
+            long changed = word | (1L << value);
+            if (changed != word) {
+                words[value >>> 6] = changed;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public Container remove(char value) {
+            long word = words[value >>> 6];
+            long changed = word & ~(1L << value);
+            if (changed != word) {
+                words[value >>> 6] = changed;
+                cardinality--;
+            }
+            return cardinality > ARRAY_LIMIT ? this : toArray();
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitsetContainer bitset = (BitsetContainer) other;
+            BitsetContainer result = new BitsetContainer();
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                result.words[i] = words[i] & bitset.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+            return result.cardinality > ARRAY_LIMIT ? result : result.toArray();
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            BitsetContainer bitset = (BitsetContainer) other;
+            int result = 0;
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                result += Long.bitCount(words[i] & bitset.words[i]);
+            }
+            return result;
+        }
+
+        @Override
+        public int copyTo(int[] target, int position, int high) {
+            for (int i = 0; i < BITSET_WORDS; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    target[position++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return position;
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int[] ints = new int[cardinality];
+            copyTo(ints, 0, 0);
+            for (int i = 0; i < cardinality; i++) {
+                values[i] = (char) ints[i];
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.utilities.popularity;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Films ordered by likes count, most liked first, films with equal counts by id.
+ * Safe for concurrent use: while the count of a film changes the film can be missing from {@link #getTop(int)}.
+ */
+public class Leaderboard {
+    private final ConcurrentMap<Integer, Integer> likes = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Long> order = new ConcurrentSkipListSet<>();
+
+    public void put(int filmId, int likesCount) {
+        likes.compute(filmId, (id, oldCount) -> {
+            if (oldCount != null) {
+                order.remove(key(id, oldCount));
+            }
+            order.add(key(id, likesCount));
+            return likesCount;
+        });
+    }
+
+    /**
+     * Changes the count of a film on the board, films not on the board are skipped.
+     */
+    public void change(int filmId, int delta) {
+        likes.computeIfPresent(filmId, (id, oldCount) -> {
+            order.remove(key(id, oldCount));
+            order.add(key(id, oldCount + delta));
+            return oldCount + delta;
+        });
+    }
+
+    public void remove(int filmId) {
+        likes.computeIfPresent(filmId, (id, oldCount) -> {
+            order.remove(key(id, oldCount));
+            return null;
+        });
+    }
+
+    /**
+     * @return likes count of the film, 0 for a film not on the board
+     */
+    public int getLikes(int filmId) {
+        return likes.getOrDefault(filmId, 0);
+    }
+
+    public void clear() {
+        likes.clear();
+        order.clear();
+    }
+
+    /**
+     * @return ids of at most limit most liked films
+     */
+    public List<Integer> getTop(int limit) {
+        List<Integer> filmIds = new ArrayList<>(Integer.min(limit, likes.size()));
+        Iterator<Long> keys = order.iterator();
+        while (filmIds.size() < limit && keys.hasNext()) {
+            filmIds.add((int) keys.next().longValue());
+        }
+        return filmIds;
+    }
+
+    /*
+     * inverted count in the high half sorts larger counts first, id in the low half breaks the ties
+     */
+    private static long key(int filmId, int likesCount) {
+        return ((long) ~likesCount << 32) | (filmId & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Predicted ratings of the films a user has not rated yet.
+ * For every such film keeps the few most similar films rated by the user and predicts
+ * the rating as the average of their rates weighted by similarity.
+ */
+class AbsentRatings {
+    private final int howMany;
+    private final double[] similarities;
+    private final double[] rates;
+    private final int[] counts;
+
+    AbsentRatings(int rowsCount, int howMany) {
+        this.howMany = howMany;
+        this.similarities = new double[rowsCount * howMany];
+        this.rates = new double[rowsCount * howMany];
+        this.counts = new int[rowsCount];
+    }
+
+    /*
+     * ties keep the item pushed first
+     */
+    void push(int row, double similarity, double rate) {
+        int offset = row * howMany;
+        int count = counts[row];
+        int position = count;
+        while (position > 0 && similarities[offset + position - 1] < similarity) {
+            position--;
+        }
+        if (position == howMany) {
+            return;
+        }
+        int last = Integer.min(count, howMany - 1);
+        for (int i = last; i > position; i--) {
+            similarities[offset + i] = similarities[offset + i - 1];
+            rates[offset + i] = rates[offset + i - 1];
+        }
+        similarities[offset + position] = similarity;
+        rates[offset + position] = rate;
+        counts[row] = last + 1;
+    }
+
+    boolean contains(int row) {
+        return counts[row] > 0;
+    }
+
+    double get(int row) {
+        int offset = row * howMany;
+        double absentRatingSum = 0;
+        double absentRatingDenom = 0;
+        for (int i = offset; i < offset + counts[row]; i++) {
+            absentRatingSum += rates[i] * similarities[i];
+            absentRatingDenom += similarities[i];
+        }
+        return absentRatingSum / absentRatingDenom;
+    }
+
+    /**
+     * @return ids of the rows sorted by predicted rating descending, equal ratings by id ascending;
+     * with a limit only the best rows are kept in a bounded heap instead of sorting all of them
+     */
+    List<Integer> toSortedIds(IntUnaryOperator idOfRow, List<Integer> rows, Optional<Integer> limit) {
+        double[] ratings = new double[counts.length];
+        for (Integer row : rows) {
+            ratings[row] = get(row);
+        }
+        Comparator<Integer> byRating = Comparator.<Integer>comparingDouble(row -> ratings[row]).reversed()
+                .thenComparingInt(idOfRow::applyAsInt);
+        List<Integer> sortedRows;
+        if (limit.isEmpty() || limit.get() >= rows.size()) {
+            sortedRows = new ArrayList<>(rows);
+            sortedRows.sort(byRating);
+        } else {
+            PriorityQueue<Integer> best = new PriorityQueue<>(limit.get() + 1, byRating.reversed());
+            for (Integer row : rows) {
+                best.add(row);
+                if (best.size() > limit.get()) {
+                    best.poll();
+                }
+            }
+            sortedRows = new ArrayList<>(best);
+            sortedRows.sort(byRating);
+        }
+        List<Integer> ids = new ArrayList<>(sortedRows.size());
+        for (Integer row : sortedRows) {
+            ids.add(idOfRow.applyAsInt(row));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Alternating least squares for implicit feedback (Hu, Koren, Volinsky) over binary likes.
+ * A like is a preference of 1 with confidence 1 + alpha, an absent like is a preference of 0 with confidence 1.
+ * Every iteration solves the factors of all users with the film factors fixed and then the other way round;
+ * each user (film) is solved independently, so they are solved in parallel.
+ * For a user with liked films L and film factors Y:
+ * (YᵀY + alpha * sum of y yᵀ over L + regularization * I) x = (1 + alpha) * sum of y over L.
+ */
+public class AlsTrainer {
+    private final int rank;
+    private final int iterations;
+    private final double regularization;
+    private final double alpha;
+    private final long seed;
+
+    public AlsTrainer(int rank, int iterations, double regularization, double alpha, long seed) {
+        this.rank = rank;
+        this.iterations = iterations;
+        this.regularization = regularization;
+        this.alpha = alpha;
+        this.seed = seed;
+    }
+
+    /**
+     * @param likes films × users matrix of likes
+     */
+    public FactorModel train(Matrix likes, ForkJoinPool pool) {
+        int filmsCount = likes.getRowsCount();
+        int usersCount = likes.getColumnsCount();
+        float[] userFactors = new float[usersCount * rank];
+        float[] filmFactors = new float[filmsCount * rank];
+        Random random = new Random(seed);
+        for (int i = 0; i < filmFactors.length; i++) {
+            filmFactors[i] = (float) (random.nextGaussian() * 0.01);
+        }
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            solveAll(usersCount, userFactors, filmFactors, true, likes, pool);
+            solveAll(filmsCount, filmFactors, userFactors, false, likes, pool);
+        }
+        int[] userIds = new int[usersCount];
+        for (int user = 0; user < usersCount; user++) {
+            userIds[user] = likes.getColumnId(user);
+        }
+        int[] filmIds = new int[filmsCount];
+        for (int film = 0; film < filmsCount; film++) {
+            filmIds[film] = likes.getRowId(film);
+        }
+        return new FactorModel(rank, userIds, filmIds, userFactors, filmFactors);
+    }
+
+    /*
+     * solves factors of every user (byColumns) or film with the other side fixed
+     */
+    private void solveAll(int count, float[] solved, float[] fixed, boolean byColumns, Matrix likes,
+                          ForkJoinPool pool) {
+        double[] gram = findGram(fixed);
+        pool.submit(() -> IntStream.range(0, count).parallel().forEach(index -> {
+            int start = byColumns ? likes.getColumnStart(index) : likes.getRowStart(index);
+            int end = byColumns ? likes.getColumnEnd(index) : likes.getRowEnd(index);
+            double[] a = gram.clone();
+            double[] b = new double[rank];
+            for (int k = 0; k < rank; k++) {
+                a[k * rank + k] += regularization;
+            }
+            for (int entry = start; entry < end; entry++) {
+                int other = byColumns ? likes.getRowIndexAt(entry) : likes.getColumnIndexAt(entry);
+                int offset = other * rank;
+                for (int i = 0; i < rank; i++) {
+                    double yi = fixed[offset + i];
+                    b[i] += (1 + alpha) * yi;
+                    for (int j = 0; j < rank; j++) {
+                        a[i * rank + j] += alpha * yi * fixed[offset + j];
+                    }
+                }
+            }
+            solveCholesky(a, b);
+            for (int k = 0; k < rank; k++) {
+                solved[index * rank + k] = (float) b[k];
+            }
+        })).join();
+    }
+
+    private double[] findGram(float[] factors) {
+        double[] gram = new double[rank * rank];
+        for (int offset = 0; offset < factors.length; offset += rank) {
+            for (int i = 0; i < rank; i++) {
+                for (int j = i; j < rank; j++) {
+                    gram[i * rank + j] += (double) factors[offset + i] * factors[offset + j];
+                }
+            }
+        }
+        for (int i = 0; i < rank; i++) {
+            for (int j = 0; j < i; j++) {
+                gram[i * rank + j] = gram[j * rank + i];
+            }
+        }
+        return gram;
+    }
+
+    /*
+     * solves a x = b for symmetric positive definite a, the solution replaces b, a is overwritten
+     */
+    private void solveCholesky(double[] a, double[] b) {
+        for (int j = 0; j < rank; j++) {
+            double diagonal = a[j * rank + j];
+            for (int k = 0; k < j; k++) {
+                diagonal -= a[j * rank + k] * a[j * rank + k];
+            }
+            diagonal = Math.sqrt(diagonal);
+            a[j * rank + j] = diagonal;
+            for (int i = j + 1; i < rank; i++) {
+                double value = a[i * rank + j];
+                for (int k = 0; k < j; k++) {
+                    value -= a[i * rank + k] * a[j * rank + k];
+                }
+                a[i * rank + j] = value / diagonal;
+            }
+        }
+        for (int i = 0; i < rank; i++) {
+            double value = b[i];
+            for (int k = 0; k < i; k++) {
+                value -= a[i * rank + k] * b[k];
+            }
+            b[i] = value / a[i * rank + i];
+        }
+        for (int i = rank - 1; i >= 0; i--) {
+            double value = b[i];
+            for (int k = i + 1; k < rank; k++) {
+                value -= a[k * rank + i] * b[k];
+            }
+            b[i] = value / a[i * rank + i];
+        }
+    }
+}
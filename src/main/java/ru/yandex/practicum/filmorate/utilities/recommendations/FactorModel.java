@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * User and film latent factors of a matrix factorization, stored in flat buffers:
+ * factors of the user with index u are at [u * rank, (u + 1) * rank) of userFactors, the same for films.
+ * Predicted preference of a film is the dot product of the user and film factors.
+ * Ids are ascending, an index is found by binary search.
+ * A model mapped from its file is read in place, outside the Java heap.
+ * File layout (big-endian): magic, format version, rank, users count, films count, user ids, film ids,
+ * user factors, film factors.
+ */
+public class FactorModel {
+    private static final int FILE_MAGIC = 0x464C4D46; // "FLMF"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 5 * 4;
+
+    private final int rank;
+    private final IntBuffer userIds;
+    private final IntBuffer filmIds;
+    private final FloatBuffer userFactors;
+    private final FloatBuffer filmFactors;
+
+    FactorModel(int rank, int[] userIds, int[] filmIds, float[] userFactors, float[] filmFactors) {
+        this(rank, IntBuffer.wrap(userIds), IntBuffer.wrap(filmIds),
+                FloatBuffer.wrap(userFactors), FloatBuffer.wrap(filmFactors));
+    }
+
+    private FactorModel(int rank, IntBuffer userIds, IntBuffer filmIds, FloatBuffer userFactors,
+                        FloatBuffer filmFactors) {
+        this.rank = rank;
+        this.userIds = userIds;
+        this.filmIds = filmIds;
+        this.userFactors = userFactors;
+        this.filmFactors = filmFactors;
+    }
+
+    public boolean containsUser(int userId) {
+        return findIndex(userIds, userId) >= 0;
+    }
+
+    /**
+     * Scans all films and returns the ones with the highest predicted preference, equal preferences by id
+     * ascending, skipping the films already liked by the user; only limit best films are kept while scanning.
+     */
+    public List<Integer> getRecommendations(int userId, int[] likedFilmIds, Optional<Integer> limit) {
+        int user = findIndex(userIds, userId);
+        if (user < 0) {
+            return Collections.emptyList();
+        }
+        Set<Integer> liked = new HashSet<>();
+        for (int filmId : likedFilmIds) {
+            liked.add(filmId);
+        }
+        int filmsCount = filmIds.limit();
+        float[] userVector = new float[rank];
+        for (int k = 0; k < rank; k++) {
+            userVector[k] = userFactors.get(user * rank + k);
+        }
+        float[] scores = new float[filmsCount];
+        // equal scores are ordered by index, that is by id
+        Comparator<Integer> byScore = Comparator.<Integer>comparingDouble(film -> -scores[film])
+                .thenComparingInt(film -> film);
+        int howMany = limit.orElse(filmsCount);
+        PriorityQueue<Integer> best = new PriorityQueue<>(Integer.min(howMany, filmsCount) + 1, byScore.reversed());
+        for (int film = 0; film < filmsCount && howMany > 0; film++) {
+            if (liked.contains(filmIds.get(film))) {
+                continue;
+            }
+            float score = 0;
+            int filmOffset = film * rank;
+            for (int k = 0; k < rank; k++) {
+                score += userVector[k] * filmFactors.get(filmOffset + k);
+            }
+            scores[film] = score;
+            best.add(film);
+            if (best.size() > howMany) {
+                best.poll();
+            }
+        }
+        List<Integer> films = new ArrayList<>(best);
+        films.sort(byScore);
+        List<Integer> recommendations = new ArrayList<>(films.size());
+        for (Integer film : films) {
+            recommendations.add(filmIds.get(film));
+        }
+        return recommendations;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * Writes the model to a temporary file next to the target and moves it over the target,
+     * so a reader never sees a partially written file.
+     */
+    public void write(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(rank);
+            out.writeInt(userIds.limit());
+            out.writeInt(filmIds.limit());
+            for (int i = 0; i < userIds.limit(); i++) {
+                out.writeInt(userIds.get(i));
+            }
+            for (int i = 0; i < filmIds.limit(); i++) {
+                out.writeInt(filmIds.get(i));
+            }
+            for (int i = 0; i < userFactors.limit(); i++) {
+                out.writeFloat(userFactors.get(i));
+            }
+            for (int i = 0; i < filmFactors.limit(); i++) {
+                out.writeFloat(filmFactors.get(i));
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the file written by {@link #write(Path)} without copying the factors into the heap.
+     */
+    public static FactorModel map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION) {
+                throw new IOException("Неизвестный формат файла факторов " + path);
+            }
+            int rank = buffer.getInt(8);
+            int usersCount = buffer.getInt(12);
+            int filmsCount = buffer.getInt(16);
+            int position = HEADER_BYTES;
+            IntBuffer userIds = slice(buffer, position, usersCount).asIntBuffer();
+            position += 4 * usersCount;
+            IntBuffer filmIds = slice(buffer, position, filmsCount).asIntBuffer();
+            position += 4 * filmsCount;
+            FloatBuffer userFactors = slice(buffer, position, usersCount * rank).asFloatBuffer();
+            position += 4 * usersCount * rank;
+            FloatBuffer filmFactors = slice(buffer, position, filmsCount * rank).asFloatBuffer();
+            return new FactorModel(rank, userIds, filmIds, userFactors, filmFactors);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int valuesCount) {
+        return buffer.duplicate().position(position).limit(position + 4 * valuesCount).slice();
+    }
+
+    private static int findIndex(IntBuffer ids, int id) {
+        int low = 0;
+        int high = ids.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = ids.get(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
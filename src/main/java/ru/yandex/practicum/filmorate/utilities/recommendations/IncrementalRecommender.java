@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Recommendations over binary likes that stay fresh without rebuilding the similarity model.
+ * Neighbour lists come from a {@link NeighbourSnapshot} of a model built once; every like updates {@link LikeStatistics}
+ * and re-ranks only the neighbour lists of the liked film and of the other films liked by the same user.
+ * Similarities used for scoring are always taken from the current statistics.
+ * Thread-safe: likes are applied under a write lock, recommendations are read under a read lock.
+ */
+public class IncrementalRecommender {
+    private final NeighbourSnapshot neighbours;
+    private final LikeStatistics likes;
+    private final int neighboursCount;
+    private final Map<Integer, int[]> updatedNeighbours = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public IncrementalRecommender(NeighbourSnapshot neighbours, LikeStatistics likes, int neighboursCount) {
+        this.neighbours = neighbours;
+        this.likes = likes;
+        this.neighboursCount = neighboursCount;
+    }
+
+    public void addLike(int filmId, int userId) {
+        lock.writeLock().lock();
+        try {
+            if (likes.addLike(filmId, userId)) {
+                int[] userFilms = likes.getFilms(userId);
+                updateNeighbours(filmId, userFilms);
+                for (int otherId : userFilms) {
+                    if (otherId != filmId) {
+                        updateNeighbours(otherId, new int[] {filmId});
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * an unlike only lowers similarities, which are always read from the statistics,
+     * so neighbour lists are not changed
+     */
+    public void removeLike(int filmId, int userId) {
+        lock.writeLock().lock();
+        try {
+            likes.removeLike(filmId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(int filmId) {
+        lock.writeLock().lock();
+        try {
+            likes.removeFilm(filmId);
+            updatedNeighbours.put(filmId, new int[0]);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(int userId) {
+        lock.writeLock().lock();
+        try {
+            likes.removeUser(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * candidates are numbered in the order they are met, so the ratings are sized
+     * to the neighbours of the user's films rather than to all films
+     */
+    public List<Integer> getRecommendations(int userId, Optional<Integer> limit) {
+        lock.readLock().lock();
+        try {
+            int[] userFilms = likes.getFilms(userId);
+            int maxCandidates = 0;
+            for (int likedId : userFilms) {
+                maxCandidates += getNeighbours(likedId).length;
+            }
+            AbsentRatings absentRatings = new AbsentRatings(maxCandidates,
+                    Recommender.HOW_MANY_SIMILAR_ITEMS_TO_ANALYZE);
+            IntIntHashMap candidateNumbers = new IntIntHashMap(maxCandidates);
+            int[] candidateIds = new int[maxCandidates];
+            List<Integer> candidates = new ArrayList<>();
+            for (int likedId : userFilms) {
+                for (int filmId : getNeighbours(likedId)) {
+                    if (likes.findFilmIndex(filmId) < 0 || likes.getLikesCount(filmId) == 0 ||
+                            likes.isLiked(filmId, userId)) {
+                        continue;
+                    }
+                    int number = candidateNumbers.get(filmId, -1);
+                    if (number < 0) {
+                        number = candidates.size();
+                        candidateNumbers.put(filmId, number);
+                        candidateIds[number] = filmId;
+                        candidates.add(number);
+                    }
+                    absentRatings.push(number, likes.findSimilarity(filmId, likedId), 1);
+                }
+            }
+            return absentRatings.toSortedIds(number -> candidateIds[number], candidates, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ids of the films liked by the user, ascending
+     */
+    public int[] getFilms(int userId) {
+        lock.readLock().lock();
+        try {
+            return likes.getFilms(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] getNeighbours(int filmId) {
+        int[] updated = updatedNeighbours.get(filmId);
+        return updated != null ? updated : neighbours.getNeighbours(filmId);
+    }
+
+    /**
+     * Merges the new candidates into the neighbour list of the film and keeps the most similar ones.
+     */
+    private void updateNeighbours(int filmId, int[] candidates) {
+        Map<Integer, Double> similarities = new HashMap<>();
+        for (int neighbourId : getNeighbours(filmId)) {
+            similarities.put(neighbourId, likes.findSimilarity(filmId, neighbourId));
+        }
+        for (int candidateId : candidates) {
+            if (candidateId != filmId) {
+                similarities.put(candidateId, likes.findSimilarity(filmId, candidateId));
+            }
+        }
+        similarities.values().removeIf(similarity -> Double.isNaN(similarity));
+        updatedNeighbours.put(filmId, similarities.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(neighboursCount)
+                .mapToInt(Map.Entry::getKey)
+                .toArray());
+    }
+}
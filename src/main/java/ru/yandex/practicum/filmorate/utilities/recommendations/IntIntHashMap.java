@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+/**
+ * Open addressing hash map from positive int keys to int values without boxing.
+ * Key 0 marks a free slot, so only positive keys (ids) are supported.
+ * Not thread-safe.
+ */
+class IntIntHashMap {
+    private static final int MIN_CAPACITY = 4;
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    IntIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    IntIntHashMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * 3 < expectedSize * 4) {
+            capacity *= 2;
+        }
+        keys = new int[capacity];
+        values = new int[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    boolean containsKey(int key) {
+        return keys[findSlot(key)] != FREE;
+    }
+
+    int get(int key, int defaultValue) {
+        int slot = findSlot(key);
+        return keys[slot] == FREE ? defaultValue : values[slot];
+    }
+
+    void put(int key, int value) {
+        int slot = findSlot(key);
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+        if (size * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+    }
+
+    /**
+     * Adds delta to the value of the key (missing keys have value 0), the key is removed when the value becomes 0.
+     *
+     * @return new value
+     */
+    int addTo(int key, int delta) {
+        int value = get(key, 0) + delta;
+        if (value == 0) {
+            remove(key);
+        } else {
+            put(key, value);
+        }
+        return value;
+    }
+
+    boolean remove(int key) {
+        int slot = findSlot(key);
+        if (keys[slot] == FREE) {
+            return false;
+        }
+        // backward shift deletion keeps probe sequences without tombstones
+        int mask = keys.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                keys[free] = keys[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = FREE;
+        values[free] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * @return keys in no particular order
+     */
+    int[] keys() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int key : keys) {
+            if (key != FREE) {
+                result[i++] = key;
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Slot iteration: slots [0, capacity()) with keyAt(slot) != 0 hold the entries.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    int valueAt(int slot) {
+        return values[slot];
+    }
+
+    private int findSlot(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != FREE) {
+                int newSlot = findSlot(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
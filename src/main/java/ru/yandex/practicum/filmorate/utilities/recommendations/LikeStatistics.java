@@ -0,0 +1,205 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.util.*;
+
+/**
+ * Statistics of binary likes from which the centered cosine similarity of any two films
+ * (as {@link Recommender} computes it with empty cells treated as zeros) is found in O(1),
+ * kept up to date like by like.
+ * With F films having likes, n(u) likes of the user u, c(i) likes of the film i,
+ * T(i) = sum of n(u) over users who liked i, Q = sum of n(u)^2 and D(i, j) users who liked both films:
+ * dot(i, j) = D(i, j) - (T(i) + T(j)) / F + Q / F^2 and |i|^2 = c(i) - 2 * T(i) / F + Q / F^2.
+ * A like or unlike of the film f by the user u changes only T of the films liked by u,
+ * D of the pairs (f, film liked by u), c(f), n(u), Q and F.
+ * Films are addressed by dense indexes, an index once given to a film is never reused.
+ * Not thread-safe.
+ */
+public class LikeStatistics {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final IntIntHashMap filmIndexes = new IntIntHashMap();
+    private final Map<Integer, IntIntHashMap> userFilms = new HashMap<>();
+    private int[] likesCounts = new int[INITIAL_CAPACITY];
+    private long[] likersLikesSums = new long[INITIAL_CAPACITY];
+    private IntIntHashMap[] coLikes = new IntIntHashMap[INITIAL_CAPACITY];
+    private int indexesCount;
+    private int likedFilmsCount;
+    private long likesSquaresSum;
+
+    /**
+     * Collects statistics of all likes of the matrix (films × users) in one pass over users.
+     */
+    public static LikeStatistics of(Matrix likes) {
+        LikeStatistics statistics = new LikeStatistics();
+        for (int column = 0; column < likes.getColumnsCount(); column++) {
+            int start = likes.getColumnStart(column);
+            int end = likes.getColumnEnd(column);
+            int userLikes = end - start;
+            int userId = likes.getColumnId(column);
+            IntIntHashMap films = new IntIntHashMap(userLikes);
+            statistics.userFilms.put(userId, films);
+            statistics.likesSquaresSum += (long) userLikes * userLikes;
+            for (int entry = start; entry < end; entry++) {
+                int filmId = likes.getRowId(likes.getRowIndexAt(entry));
+                int index = statistics.findOrAddFilmIndex(filmId);
+                films.put(filmId, 1);
+                if (statistics.likesCounts[index]++ == 0) {
+                    statistics.likedFilmsCount++;
+                }
+                statistics.likersLikesSums[index] += userLikes;
+                for (int other = start; other < entry; other++) {
+                    int otherId = likes.getRowId(likes.getRowIndexAt(other));
+                    statistics.coLikes[index].addTo(otherId, 1);
+                    statistics.coLikes[statistics.filmIndexes.get(otherId, -1)].addTo(filmId, 1);
+                }
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * @return false if the film is already liked by the user
+     */
+    public boolean addLike(int filmId, int userId) {
+        IntIntHashMap films = userFilms.computeIfAbsent(userId, id -> new IntIntHashMap());
+        if (films.containsKey(filmId)) {
+            return false;
+        }
+        int index = findOrAddFilmIndex(filmId);
+        int userLikes = films.size();
+        for (int slot = 0; slot < films.capacity(); slot++) {
+            int otherId = films.keyAt(slot);
+            if (otherId != 0) {
+                int otherIndex = filmIndexes.get(otherId, -1);
+                likersLikesSums[otherIndex]++;
+                coLikes[otherIndex].addTo(filmId, 1);
+                coLikes[index].addTo(otherId, 1);
+            }
+        }
+        films.put(filmId, 1);
+        likesSquaresSum += 2L * userLikes + 1;
+        if (likesCounts[index]++ == 0) {
+            likedFilmsCount++;
+        }
+        likersLikesSums[index] += userLikes + 1;
+        return true;
+    }
+
+    /**
+     * @return false if the film is not liked by the user
+     */
+    public boolean removeLike(int filmId, int userId) {
+        IntIntHashMap films = userFilms.get(userId);
+        if (films == null || !films.remove(filmId)) {
+            return false;
+        }
+        int index = filmIndexes.get(filmId, -1);
+        int userLikes = films.size() + 1;
+        for (int slot = 0; slot < films.capacity(); slot++) {
+            int otherId = films.keyAt(slot);
+            if (otherId != 0) {
+                int otherIndex = filmIndexes.get(otherId, -1);
+                likersLikesSums[otherIndex]--;
+                coLikes[otherIndex].addTo(filmId, -1);
+                coLikes[index].addTo(otherId, -1);
+            }
+        }
+        if (films.isEmpty()) {
+            userFilms.remove(userId);
+        }
+        likesSquaresSum -= 2L * userLikes - 1;
+        if (--likesCounts[index] == 0) {
+            likedFilmsCount--;
+        }
+        likersLikesSums[index] -= userLikes;
+        return true;
+    }
+
+    /**
+     * Removes all likes of the film, is O(users).
+     */
+    public void removeFilm(int filmId) {
+        List<Integer> likers = new ArrayList<>();
+        userFilms.forEach((userId, films) -> {
+            if (films.containsKey(filmId)) {
+                likers.add(userId);
+            }
+        });
+        for (Integer userId : likers) {
+            removeLike(filmId, userId);
+        }
+    }
+
+    public void removeUser(int userId) {
+        for (int filmId : getFilms(userId)) {
+            removeLike(filmId, userId);
+        }
+    }
+
+    public boolean isLiked(int filmId, int userId) {
+        IntIntHashMap films = userFilms.get(userId);
+        return films != null && films.containsKey(filmId);
+    }
+
+    /**
+     * @return ids of the films liked by the user, ascending
+     */
+    public int[] getFilms(int userId) {
+        IntIntHashMap films = userFilms.get(userId);
+        if (films == null) {
+            return new int[0];
+        }
+        int[] ids = films.keys();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    public int getLikesCount(int filmId) {
+        int index = filmIndexes.get(filmId, -1);
+        return index < 0 ? 0 : likesCounts[index];
+    }
+
+    public double findSimilarity(int filmId1, int filmId2) {
+        int index1 = filmIndexes.get(filmId1, -1);
+        int index2 = filmIndexes.get(filmId2, -1);
+        if (index1 < 0 || index2 < 0) {
+            return Double.NaN;
+        }
+        double films = likedFilmsCount;
+        double averagesSquaresSum = likesSquaresSum / films / films;
+        int commonLikes = index1 == index2 ? likesCounts[index1] : coLikes[index1].get(filmId2, 0);
+        double scalarProduct = commonLikes -
+                (likersLikesSums[index1] + likersLikesSums[index2]) / films + averagesSquaresSum;
+        return scalarProduct / (findNorm(index1, films, averagesSquaresSum) *
+                findNorm(index2, films, averagesSquaresSum));
+    }
+
+    /**
+     * @return index of the film or negative number if the film has never been liked
+     */
+    public int findFilmIndex(int filmId) {
+        return filmIndexes.get(filmId, -1);
+    }
+
+    private double findNorm(int index, double films, double averagesSquaresSum) {
+        double squaredNorm = likesCounts[index] - 2 * likersLikesSums[index] / films + averagesSquaresSum;
+        return Math.sqrt(Math.max(squaredNorm, 0));
+    }
+
+    private int findOrAddFilmIndex(int filmId) {
+        int index = filmIndexes.get(filmId, -1);
+        if (index >= 0) {
+            return index;
+        }
+        if (indexesCount == likesCounts.length) {
+            int capacity = likesCounts.length * 2;
+            likesCounts = Arrays.copyOf(likesCounts, capacity);
+            likersLikesSums = Arrays.copyOf(likersLikesSums, capacity);
+            coLikes = Arrays.copyOf(coLikes, capacity);
+        }
+        index = indexesCount++;
+        coLikes[index] = new IntIntHashMap();
+        filmIndexes.put(filmId, index);
+        return index;
+    }
+}
@@ -2,48 +2,267 @@ package ru.yandex.practicum.filmorate.utilities.recommendations;
 
 import java.util.*;
 
+/**
+ * Sparse rows × columns matrix (films × users for recommendations).
+ * Values are collected by {@link #writeValue} into coordinate buffers and compressed on first read into
+ * CSR (by rows) and CSC (by columns) arrays, so memory is proportional to the number of written values.
+ * Rows and columns are addressed by ids outside and by dense indexes (positions in ascending id order) inside.
+ */
 public class Matrix {
-    private final Map<Integer, Map<Integer, Optional<Double>>> rows = new HashMap<>();
-    private final Map<Integer, Map<Integer, Optional<Double>>> columns = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 16;
 
-    public Optional<Double> getValue(Integer row, Integer column) {
-        if (rows.get(row) != null && rows.get(row).get(column) != null) {
-            return rows.get(row).get(column);
-        } else {
-            return null;
+    private int[] bufferRows = new int[INITIAL_CAPACITY];
+    private int[] bufferColumns = new int[INITIAL_CAPACITY];
+    private float[] bufferValues = new float[INITIAL_CAPACITY];
+    private int bufferSize;
+    private boolean compressed;
+
+    private int[] rowIds = new int[0];
+    private int[] columnIds = new int[0];
+    private int[] rowPointers = new int[1];
+    private int[] rowEntries = new int[0];
+    private float[] rowValues = new float[0];
+    private int[] columnPointers = new int[1];
+    private int[] columnEntries = new int[0];
+    private float[] columnValues = new float[0];
+
+    public Matrix writeValue(int row, int column, double value) {
+        if (row > 0 && column > 0) {
+            if (compressed) {
+                decompress();
+            }
+            ensureCapacity(bufferSize + 1);
+            bufferRows[bufferSize] = row;
+            bufferColumns[bufferSize] = column;
+            bufferValues[bufferSize] = (float) value;
+            bufferSize++;
+        }
+        return this;
+    }
+
+    public Matrix writeValue(Integer row, Integer column, Optional<Double> value) {
+        value.ifPresent(v -> writeValue(row.intValue(), column.intValue(), v));
+        return this;
+    }
+
+    public OptionalDouble getValue(int row, int column) {
+        compress();
+        int rowIndex = findRowIndex(row);
+        int columnIndex = findColumnIndex(column);
+        if (rowIndex < 0 || columnIndex < 0) {
+            return OptionalDouble.empty();
         }
+        int entry = Arrays.binarySearch(rowEntries, rowPointers[rowIndex], rowPointers[rowIndex + 1], columnIndex);
+        return entry < 0 ?
+                OptionalDouble.empty() :
+                OptionalDouble.of(rowValues[entry]);
     }
-    public Map<Integer, Optional<Double>> getRow(Integer row) {
-        return rows.get(row);
+
+    public boolean isEmpty() {
+        compress();
+        return rowValues.length == 0;
     }
-    public Map<Integer, Optional<Double>> getColumn(Integer column) {
-        return columns.get(column);
+
+    public int getRowsCount() {
+        compress();
+        return rowIds.length;
     }
 
-    public Matrix writeValue(Integer row, Integer column, Optional<Double> value) {
-        if (row > 0 && column > 0) {
-            rows.putIfAbsent(row, new HashMap<>());
-            columns.putIfAbsent(column, new HashMap<>());
-            rows.get(row).put(column, value);
-            columns.get(column).put(row, value);
-            expand();
+    public int getColumnsCount() {
+        compress();
+        return columnIds.length;
+    }
+
+    public int getValuesCount() {
+        compress();
+        return rowValues.length;
+    }
+
+    public int getRowId(int rowIndex) {
+        compress();
+        return rowIds[rowIndex];
+    }
+
+    public int getColumnId(int columnIndex) {
+        compress();
+        return columnIds[columnIndex];
+    }
+
+    /**
+     * @return dense index of the row or negative number if the row has no values
+     */
+    public int findRowIndex(int row) {
+        compress();
+        int index = Arrays.binarySearch(rowIds, row);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @return dense index of the column or negative number if the column has no values
+     */
+    public int findColumnIndex(int column) {
+        compress();
+        int index = Arrays.binarySearch(columnIds, column);
+        return index < 0 ? -1 : index;
+    }
+
+    /*
+     * Values of the row with index rowIndex are stored at entries [getRowStart(rowIndex), getRowEnd(rowIndex)),
+     * column indexes of these entries are sorted ascending.
+     */
+    public int getRowStart(int rowIndex) {
+        compress();
+        return rowPointers[rowIndex];
+    }
+
+    public int getRowEnd(int rowIndex) {
+        compress();
+        return rowPointers[rowIndex + 1];
+    }
+
+    public int getColumnIndexAt(int rowEntry) {
+        return rowEntries[rowEntry];
+    }
+
+    public float getRowValueAt(int rowEntry) {
+        return rowValues[rowEntry];
+    }
+
+    /*
+     * Values of the column with index columnIndex are stored at entries
+     * [getColumnStart(columnIndex), getColumnEnd(columnIndex)), row indexes of these entries are sorted ascending.
+     */
+    public int getColumnStart(int columnIndex) {
+        compress();
+        return columnPointers[columnIndex];
+    }
+
+    public int getColumnEnd(int columnIndex) {
+        compress();
+        return columnPointers[columnIndex + 1];
+    }
+
+    public int getRowIndexAt(int columnEntry) {
+        return columnEntries[columnEntry];
+    }
+
+    public float getColumnValueAt(int columnEntry) {
+        return columnValues[columnEntry];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bufferRows.length) {
+            int newCapacity = Math.max(capacity, bufferRows.length * 2);
+            bufferRows = Arrays.copyOf(bufferRows, newCapacity);
+            bufferColumns = Arrays.copyOf(bufferColumns, newCapacity);
+            bufferValues = Arrays.copyOf(bufferValues, newCapacity);
         }
-        return this;
     }
 
-    public List<Integer> getRowIndexes() {return new ArrayList<>(rows.keySet());}
-    public List<Integer> getColumnIndexes() {return new ArrayList<>(columns.keySet());}
+    private void compress() {
+        if (compressed) {
+            return;
+        }
+        rowIds = distinctSorted(bufferRows, bufferSize);
+        columnIds = distinctSorted(bufferColumns, bufferSize);
 
-    public boolean isEmpty(){
-        return rows.isEmpty() && columns.isEmpty();
+        // counting sort of buffered values by row keeps the writing order inside every row
+        int rowsCount = rowIds.length;
+        int[] pointers = new int[rowsCount + 1];
+        int[] bufferRowIndexes = new int[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            bufferRowIndexes[i] = Arrays.binarySearch(rowIds, bufferRows[i]);
+            pointers[bufferRowIndexes[i] + 1]++;
+        }
+        for (int r = 0; r < rowsCount; r++) {
+            pointers[r + 1] += pointers[r];
+        }
+        long[] keys = new long[bufferSize];
+        int[] next = Arrays.copyOf(pointers, rowsCount);
+        for (int i = 0; i < bufferSize; i++) {
+            int columnIndex = Arrays.binarySearch(columnIds, bufferColumns[i]);
+            keys[next[bufferRowIndexes[i]]++] = ((long) columnIndex << Integer.SIZE) | i;
+        }
+
+        // inside every row: sort by column, the last written value wins
+        int[] entries = new int[bufferSize];
+        float[] values = new float[bufferSize];
+        int[] newPointers = new int[rowsCount + 1];
+        int size = 0;
+        for (int r = 0; r < rowsCount; r++) {
+            Arrays.sort(keys, pointers[r], pointers[r + 1]);
+            for (int k = pointers[r]; k < pointers[r + 1]; k++) {
+                int columnIndex = (int) (keys[k] >>> Integer.SIZE);
+                int bufferIndex = (int) keys[k];
+                if (size > newPointers[r] && entries[size - 1] == columnIndex) {
+                    values[size - 1] = bufferValues[bufferIndex];
+                } else {
+                    entries[size] = columnIndex;
+                    values[size] = bufferValues[bufferIndex];
+                    size++;
+                }
+            }
+            newPointers[r + 1] = size;
+        }
+        rowPointers = newPointers;
+        rowEntries = Arrays.copyOf(entries, size);
+        rowValues = Arrays.copyOf(values, size);
+        transpose();
+
+        bufferRows = new int[0];
+        bufferColumns = new int[0];
+        bufferValues = new float[0];
+        bufferSize = 0;
+        compressed = true;
+    }
+
+    private void transpose() {
+        int columnsCount = columnIds.length;
+        int[] pointers = new int[columnsCount + 1];
+        for (int entry : rowEntries) {
+            pointers[entry + 1]++;
+        }
+        for (int c = 0; c < columnsCount; c++) {
+            pointers[c + 1] += pointers[c];
+        }
+        int[] next = Arrays.copyOf(pointers, columnsCount);
+        columnEntries = new int[rowEntries.length];
+        columnValues = new float[rowValues.length];
+        for (int r = 0; r < rowIds.length; r++) {
+            for (int entry = rowPointers[r]; entry < rowPointers[r + 1]; entry++) {
+                int position = next[rowEntries[entry]]++;
+                columnEntries[position] = r;
+                columnValues[position] = rowValues[entry];
+            }
+        }
+        columnPointers = pointers;
+    }
+
+    private void decompress() {
+        int size = rowValues.length;
+        bufferRows = new int[Math.max(size, INITIAL_CAPACITY)];
+        bufferColumns = new int[bufferRows.length];
+        bufferValues = new float[bufferRows.length];
+        for (int r = 0; r < rowIds.length; r++) {
+            for (int entry = rowPointers[r]; entry < rowPointers[r + 1]; entry++) {
+                bufferRows[entry] = rowIds[r];
+                bufferColumns[entry] = columnIds[rowEntries[entry]];
+                bufferValues[entry] = rowValues[entry];
+            }
+        }
+        bufferSize = size;
+        compressed = false;
     }
 
-    private void expand() {
-        for (Integer rowI : getRowIndexes()) {
-            for (Integer colI : getColumnIndexes()) {
-                rows.get(rowI).putIfAbsent(colI, Optional.empty());
-                columns.get(colI).putIfAbsent(rowI, Optional.empty());
+    private static int[] distinctSorted(int[] values, int size) {
+        int[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                sorted[distinct++] = sorted[i];
             }
         }
+        return Arrays.copyOf(sorted, distinct);
     }
 }
@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * MinHash signatures of the sets of users who liked each film (row of a binary likes {@link Matrix})
+ * bucketed with locality-sensitive hashing.
+ * A signature has bands × rowsPerBand minimums of random hash functions over the users, two films share
+ * a bucket of a band when all minimums of the band are equal, which happens with probability J^rowsPerBand
+ * for films with Jaccard similarity J. Films sharing a bucket in at least one band are candidate neighbours.
+ * Buckets of a band are kept as rows sorted by band key, a bucket is found by binary search.
+ */
+public class MinHashIndex {
+    private static final long PRIME = (1L << 31) - 1;
+
+    private final int rowsCount;
+    private final int bands;
+    private final int rowsPerBand;
+    private final int[] signatures;
+    private final long[] bandKeys;
+    private final int[][] sortedRows;
+    private final long[][] sortedKeys;
+
+    public MinHashIndex(Matrix likes, int bands, int rowsPerBand, long seed) {
+        this.rowsCount = likes.getRowsCount();
+        this.bands = bands;
+        this.rowsPerBand = rowsPerBand;
+        int hashesCount = bands * rowsPerBand;
+        long[] multipliers = new long[hashesCount];
+        long[] increments = new long[hashesCount];
+        Random random = new Random(seed);
+        for (int i = 0; i < hashesCount; i++) {
+            multipliers[i] = 1 + random.nextInt((int) PRIME - 1);
+            increments[i] = random.nextInt((int) PRIME);
+        }
+        this.signatures = new int[rowsCount * hashesCount];
+        Arrays.fill(signatures, Integer.MAX_VALUE);
+        for (int row = 0; row < rowsCount; row++) {
+            int offset = row * hashesCount;
+            for (int entry = likes.getRowStart(row); entry < likes.getRowEnd(row); entry++) {
+                long userId = likes.getColumnId(likes.getColumnIndexAt(entry));
+                for (int i = 0; i < hashesCount; i++) {
+                    int hash = (int) ((multipliers[i] * userId + increments[i]) % PRIME);
+                    if (hash < signatures[offset + i]) {
+                        signatures[offset + i] = hash;
+                    }
+                }
+            }
+        }
+        this.bandKeys = new long[bands * rowsCount];
+        this.sortedRows = new int[bands][];
+        this.sortedKeys = new long[bands][];
+        for (int band = 0; band < bands; band++) {
+            indexBand(band);
+        }
+    }
+
+    /**
+     * @return row indexes of the films sharing a bucket with the row in any band, ascending, without the row
+     */
+    public int[] findCandidates(int row) {
+        int[] candidates = new int[0];
+        int count = 0;
+        for (int band = 0; band < bands; band++) {
+            long key = bandKeys[band * rowsCount + row];
+            int start = findFirst(sortedKeys[band], key);
+            int end = start;
+            while (end < rowsCount && sortedKeys[band][end] == key) {
+                end++;
+            }
+            if (count + end - start > candidates.length) {
+                candidates = Arrays.copyOf(candidates, Integer.max(candidates.length * 2, count + end - start));
+            }
+            for (int i = start; i < end; i++) {
+                if (sortedRows[band][i] != row) {
+                    candidates[count++] = sortedRows[band][i];
+                }
+            }
+        }
+        Arrays.sort(candidates, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || candidates[unique - 1] != candidates[i]) {
+                candidates[unique++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(candidates, unique);
+    }
+
+    /**
+     * @return share of equal signature minimums, an estimate of the Jaccard similarity of the rows
+     */
+    public double estimateSimilarity(int row1, int row2) {
+        int hashesCount = bands * rowsPerBand;
+        int equal = 0;
+        for (int i = 0; i < hashesCount; i++) {
+            if (signatures[row1 * hashesCount + i] == signatures[row2 * hashesCount + i]) {
+                equal++;
+            }
+        }
+        return (double) equal / hashesCount;
+    }
+
+    private void indexBand(int band) {
+        int hashesCount = bands * rowsPerBand;
+        long[] rowKeys = new long[rowsCount];
+        for (int row = 0; row < rowsCount; row++) {
+            long key = 1;
+            for (int i = band * rowsPerBand; i < (band + 1) * rowsPerBand; i++) {
+                key = key * 31 + signatures[row * hashesCount + i];
+            }
+            bandKeys[band * rowsCount + row] = key;
+            rowKeys[row] = key;
+        }
+        long[] keys = new long[rowsCount];
+        Integer[] order = new Integer[rowsCount];
+        for (int row = 0; row < rowsCount; row++) {
+            order[row] = row;
+        }
+        Arrays.sort(order, (row1, row2) -> Long.compare(rowKeys[row1], rowKeys[row2]));
+        sortedRows[band] = new int[rowsCount];
+        for (int i = 0; i < rowsCount; i++) {
+            sortedRows[band][i] = order[i];
+            keys[i] = rowKeys[order[i]];
+        }
+        sortedKeys[band] = keys;
+    }
+
+    private static int findFirst(long[] keys, long key) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heaps of the most similar rows, one heap of at most neighboursCount entries per row,
+ * all heaps share flat primitive arrays.
+ * Of two equally similar rows the one with the smaller index is kept.
+ */
+class NeighbourHeaps {
+    private final int neighboursCount;
+    private final int[] rows;
+    private final float[] similarities;
+    private final int[] sizes;
+
+    NeighbourHeaps(int rowsCount, int neighboursCount) {
+        this.neighboursCount = neighboursCount;
+        this.rows = new int[rowsCount * neighboursCount];
+        this.similarities = new float[rowsCount * neighboursCount];
+        this.sizes = new int[rowsCount];
+    }
+
+    void offer(int row, int neighbour, double similarity) {
+        if (Double.isNaN(similarity) || neighboursCount == 0) {
+            return;
+        }
+        float value = (float) similarity;
+        int offset = row * neighboursCount;
+        int size = sizes[row];
+        if (size < neighboursCount) {
+            rows[offset + size] = neighbour;
+            similarities[offset + size] = value;
+            sizes[row] = size + 1;
+            siftUp(offset, size);
+        } else if (isLess(similarities[offset], rows[offset], value, neighbour)) {
+            rows[offset] = neighbour;
+            similarities[offset] = value;
+            siftDown(offset, size, 0);
+        }
+    }
+
+    int size(int row) {
+        return sizes[row];
+    }
+
+    /**
+     * Copies neighbours of the row sorted by similarity descending into the target arrays.
+     */
+    void copySorted(int row, int[] targetRows, float[] targetSimilarities, int targetOffset) {
+        int offset = row * neighboursCount;
+        int size = sizes[row];
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = offset + i;
+        }
+        Arrays.sort(order, (i1, i2) -> isLess(similarities[i1], rows[i1], similarities[i2], rows[i2]) ? 1 :
+                isLess(similarities[i2], rows[i2], similarities[i1], rows[i1]) ? -1 : 0);
+        for (int i = 0; i < size; i++) {
+            targetRows[targetOffset + i] = rows[order[i]];
+            targetSimilarities[targetOffset + i] = similarities[order[i]];
+        }
+    }
+
+    private static boolean isLess(float similarity1, int row1, float similarity2, int row2) {
+        return similarity1 < similarity2 || (similarity1 == similarity2 && row1 > row2);
+    }
+
+    private void siftUp(int offset, int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!isLess(similarities[offset + position], rows[offset + position],
+                    similarities[offset + parent], rows[offset + parent])) {
+                return;
+            }
+            swap(offset + position, offset + parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int offset, int size, int position) {
+        while (true) {
+            int smallest = position;
+            for (int child = 2 * position + 1; child <= 2 * position + 2 && child < size; child++) {
+                if (isLess(similarities[offset + child], rows[offset + child],
+                        similarities[offset + smallest], rows[offset + smallest])) {
+                    smallest = child;
+                }
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(offset + position, offset + smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int row = rows[i];
+        rows[i] = rows[j];
+        rows[j] = row;
+        float similarity = similarities[i];
+        similarities[i] = similarities[j];
+        similarities[j] = similarity;
+    }
+}
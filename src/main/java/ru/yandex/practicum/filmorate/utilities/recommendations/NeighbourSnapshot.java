@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Neighbour lists of a {@link SimilarityModel} laid out in one buffer, read in place without deserialization.
+ * Layout (big-endian): magic, format version, model version (long), films count F, neighbours count N,
+ * film ids ascending [F], pointers [F + 1], neighbour film ids [N].
+ * Neighbours of the film with index f are at [pointers[f], pointers[f + 1]), most similar first;
+ * similarities are not kept, {@link IncrementalRecommender} takes them from the current likes.
+ * A snapshot mapped from a file lives outside the Java heap; a newer snapshot replaces the file
+ * by an atomic move, buffers mapped from the replaced file stay valid.
+ */
+public class NeighbourSnapshot {
+    private static final int MAGIC = 0x464C4D4E; // "FLMN"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+
+    private final long version;
+    private final IntBuffer filmIds;
+    private final IntBuffer pointers;
+    private final IntBuffer neighbourIds;
+
+    private NeighbourSnapshot(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Неизвестный формат снимка модели рекомендаций");
+        }
+        this.version = buffer.getLong(8);
+        int filmsCount = buffer.getInt(16);
+        int neighboursCount = buffer.getInt(20);
+        int position = HEADER_BYTES;
+        this.filmIds = slice(buffer, position, filmsCount).asIntBuffer();
+        position += 4 * filmsCount;
+        this.pointers = slice(buffer, position, filmsCount + 1).asIntBuffer();
+        position += 4 * (filmsCount + 1);
+        this.neighbourIds = slice(buffer, position, neighboursCount).asIntBuffer();
+    }
+
+    /**
+     * Lays out the model in a heap buffer.
+     */
+    public static NeighbourSnapshot of(SimilarityModel model, long version) {
+        try {
+            return new NeighbourSnapshot(encode(model, version));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the model to a temporary file next to the target and moves it over the target.
+     */
+    public static void write(SimilarityModel model, long version, Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = encode(model, version);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static NeighbourSnapshot map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new NeighbourSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getFilmsCount() {
+        return filmIds.limit();
+    }
+
+    /**
+     * @return ids of the most similar films, most similar first, or empty array for an unknown film
+     */
+    public int[] getNeighbours(int filmId) {
+        int index = findFilmIndex(filmId);
+        if (index < 0) {
+            return new int[0];
+        }
+        int start = pointers.get(index);
+        int[] neighbours = new int[pointers.get(index + 1) - start];
+        for (int i = 0; i < neighbours.length; i++) {
+            neighbours[i] = neighbourIds.get(start + i);
+        }
+        return neighbours;
+    }
+
+    private int findFilmIndex(int filmId) {
+        int low = 0;
+        int high = filmIds.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int id = filmIds.get(middle);
+            if (id < filmId) {
+                low = middle + 1;
+            } else if (id > filmId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer encode(SimilarityModel model, long version) {
+        Matrix matrix = model.getMatrix();
+        int filmsCount = matrix.getRowsCount();
+        int[] modelPointers = model.getNeighbourPointers();
+        int[] modelRows = model.getNeighbourRows();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + 4 * (2 * filmsCount + 1 + modelRows.length));
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(version).putInt(filmsCount).putInt(modelRows.length);
+        for (int row = 0; row < filmsCount; row++) {
+            buffer.putInt(matrix.getRowId(row));
+        }
+        for (int pointer : modelPointers) {
+            buffer.putInt(pointer);
+        }
+        for (int row : modelRows) {
+            buffer.putInt(matrix.getRowId(row));
+        }
+        return buffer.flip();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int intsCount) {
+        return buffer.duplicate().position(position).limit(position + 4 * intsCount).slice();
+    }
+}
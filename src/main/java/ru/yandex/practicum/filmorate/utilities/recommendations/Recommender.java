@@ -1,198 +1,294 @@
 package ru.yandex.practicum.filmorate.utilities.recommendations;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Item-item collaborative filtering over a sparse films × users {@link Matrix}.
+ * Ratings are centered by the user average, similarity of two films is the cosine of their centered rows.
+ * Centered rows are never materialized: dot products are accumulated only over users who rated both films,
+ * the contribution of empty cells (when they are treated as zeros) is restored from per-row sums.
+ */
 public class Recommender {
 
-    private static final Integer HOW_MANY_SIMILAR_ITEMS_TO_ANALYZE = 2; //internal, subject for test
+    static final int HOW_MANY_SIMILAR_ITEMS_TO_ANALYZE = 2; //internal, subject for test
 
     private final Matrix matrix;
-    private final Matrix preparedMatrix;
-    private final Matrix similarities;
+    private final boolean treatEmptyAsZeros; // when rates != 1, false needed
 
-    private final Boolean treatEmptyAsZeros; // when rates != 1, false needed
+    private final double[] columnAverages;
+    private final double[] rowOffsets; // sum of rate * column average over the rated cells of the row
+    private final double[] rowNorms;
+    private final double averagesSquaresSum;
 
     public Recommender(Matrix matrix, Boolean treatEmptyAsZeros) {
         this.matrix = matrix;
         this.treatEmptyAsZeros = treatEmptyAsZeros;
-        this.preparedMatrix = prepareMatrix();
-        this.similarities = findSimilarities();
+        this.columnAverages = findColumnAverages();
+        this.averagesSquaresSum = Arrays.stream(columnAverages).map(avg -> avg * avg).sum();
+        this.rowOffsets = new double[matrix.getRowsCount()];
+        this.rowNorms = new double[matrix.getRowsCount()];
+        prepareRows();
     }
 
     public List<Integer> getRecommendations(Integer userId, Optional<Integer> limit) {
-        if (matrix == null ||
-            userId == null ||
+        if (userId == null ||
             matrix.isEmpty() ||
-            Collections.max(matrix.getRowIndexes()) < 2 ||
-            Collections.max(matrix.getColumnIndexes()) < 2 ||
-            matrix.getColumn(userId) == null)
+            matrix.getRowId(matrix.getRowsCount() - 1) < 2 ||
+            matrix.getColumnId(matrix.getColumnsCount() - 1) < 2 ||
+            matrix.findColumnIndex(userId) < 0)
         {
             return Collections.emptyList();
         }
-        List<Integer> recommendations = getRecommendationsInternal(userId);
-        if (limit.isEmpty()) {
-            return recommendations;
-        } else {
-            return recommendations.subList(0, Integer.min(limit.get(), recommendations.size()));
-        }
+        return getRecommendationsInternal(matrix.findColumnIndex(userId), limit);
     }
 
-    private List<Integer> getRecommendationsInternal(Integer userId) {
-        if (!similarities.isEmpty()) {
-            Map<Integer, Double> absentRatings = findAbsentRatings(userId);
-            return absentRatings.entrySet().stream()
-                    .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-                    .collect(ArrayList::new,
-                            (list, e) -> list.add(e.getKey()),
-                            ArrayList::addAll);
-        } else {
-            return Collections.emptyList();
-        }
+    /**
+     * Finds the neighboursCount most similar films of every film, each pair of films is compared once.
+     */
+    public SimilarityModel buildSimilarityModel(int neighboursCount) {
+        int rowsCount = matrix.getRowsCount();
+        return new SimilarityModel(matrix, findNeighbours(0, rowsCount, neighboursCount));
     }
 
-    private Map<Integer, Double> findAbsentRatings(Integer userId) {
-        Map<Integer, Double> absentRatings = new HashMap<>();
-        for (Integer itemId : matrix.getRowIndexes()) {
-            if (matrix.getValue(itemId, userId).isEmpty()) {
-                Map<Integer, Double> mostSimilarPresentItems = getMostSimilarPresentItems(itemId, userId);
-                Double absentRatingSum = mostSimilarPresentItems.keySet().stream()
-                        .map(aDouble -> matrix.getValue(aDouble, userId).get() * mostSimilarPresentItems.get(aDouble))
-                        .mapToDouble(e->e)
-                        .sum();
-                Double absentRatingDenom = mostSimilarPresentItems.values().stream().mapToDouble(e->e).sum();
-                Double absentRating = absentRatingSum / absentRatingDenom;
-                absentRatings.put(itemId, absentRating);
-            }
+    /**
+     * Same as {@link #buildSimilarityModel(int)}, but the rows are split into as many equal bands as the pool
+     * is parallel. A band compares each of its rows with all other rows and fills only the heaps of its own rows,
+     * so bands share nothing but disjoint parts of the heaps and need no merging; every pair is compared twice.
+     */
+    public SimilarityModel buildSimilarityModel(int neighboursCount, ForkJoinPool pool) {
+        int rowsCount = matrix.getRowsCount();
+        int parts = Integer.min(pool.getParallelism(), Integer.max(rowsCount, 1));
+        if (parts == 1) {
+            return buildSimilarityModel(neighboursCount);
         }
-        return absentRatings;
-    }
-
-    private Map<Integer, Double> getMostSimilarPresentItems(Integer itemId, Integer userId) {
-        Map<Integer, Double> presentItemsMap = similarities.getRow(itemId).entrySet().stream()
-                .collect(
-                        HashMap::new,
-                        (map, e)-> {
-                            if (matrix.getValue(e.getKey(), userId).isPresent()) { // item to compare is rated by user with userId
-                                map.put(e.getKey(), e.getValue().get());
-                            }
-                        },
-                        HashMap::putAll
-                );
-        List<Integer> mostSimilarItems = presentItemsMap.entrySet().stream()
-                .sorted((e1, e2) -> e2.getValue().compareTo(e1.getValue()))
-                .collect(ArrayList::new,
-                        (list, e) -> list.add(e.getKey()),
-                        ArrayList::addAll
-                );
-        Map<Integer, Double> result = new HashMap<>();
-        for (Integer key : mostSimilarItems.subList(0, Integer.min(mostSimilarItems.size(), HOW_MANY_SIMILAR_ITEMS_TO_ANALYZE))) {
-            result.put(key, presentItemsMap.get(key));
-        }
-        return result;
-    }
-
-    private Matrix prepareMatrix() {
-        Matrix preparedMatrix = new Matrix();
-
-        for (Integer rowI : matrix.getRowIndexes()) {
-            for (Integer columnI : matrix.getColumnIndexes()) {
-                preparedMatrix.writeValue(rowI, columnI, matrix.getValue(rowI, columnI));
+        NeighbourHeaps neighbours = new NeighbourHeaps(rowsCount, neighboursCount);
+        pool.invoke(new NeighboursTask(0, rowsCount, parts, neighbours));
+        return new SimilarityModel(matrix, neighbours);
+    }
+
+    /**
+     * Approximate version of {@link #buildSimilarityModel(int)}: a film is compared only with the candidates
+     * found by the MinHash index, instead of all films.
+     */
+    public SimilarityModel buildSimilarityModel(int neighboursCount, MinHashIndex candidates) {
+        int rowsCount = matrix.getRowsCount();
+        NeighbourHeaps neighbours = new NeighbourHeaps(rowsCount, neighboursCount);
+        double[] products = new double[rowsCount];
+        for (int row = 0; row < rowsCount; row++) {
+            accumulateProducts(row, products);
+            for (int other : candidates.findCandidates(row)) {
+                if (other > row) {
+                    double similarity = findSimilarity(row, other, products[other]);
+                    neighbours.offer(row, other, similarity);
+                    neighbours.offer(other, row, similarity);
+                }
             }
+            resetProducts(row, products);
         }
+        return new SimilarityModel(matrix, neighbours);
+    }
 
-        for (Integer columnI : preparedMatrix.getColumnIndexes()) {
-            Map<Integer, Optional<Double>> column = preparedMatrix.getColumn(columnI);
-            Double avg = findAverageValue(column);
-            for (Integer rowI : preparedMatrix.getRowIndexes()) {
-                Optional<Double> valueToWrite = column.get(rowI);
-                if (valueToWrite.isPresent()) {
-                    valueToWrite = Optional.of(valueToWrite.get() - avg);
-                } else if (treatEmptyAsZeros) {
-                    valueToWrite = Optional.of(0 - avg);
+    /**
+     * Compares neighbours of the model with the exact neighbours for a sample of evenly spaced films.
+     *
+     * @return share of the exact neighbours found by the model
+     */
+    public double measureRecall(SimilarityModel model, int neighboursCount, int sampleSize) {
+        int rowsCount = matrix.getRowsCount();
+        if (rowsCount == 0 || neighboursCount == 0) {
+            return 1;
+        }
+        int step = Integer.max(1, rowsCount / Integer.max(sampleSize, 1));
+        double[] products = new double[rowsCount];
+        int[] exactRows = new int[neighboursCount];
+        float[] exactSimilarities = new float[neighboursCount];
+        long exactCount = 0;
+        long foundCount = 0;
+        for (int row = 0; row < rowsCount; row += step) {
+            NeighbourHeaps exact = new NeighbourHeaps(1, neighboursCount);
+            accumulateProducts(row, products);
+            for (int other = 0; other < rowsCount; other++) {
+                if (other != row) {
+                    exact.offer(0, other, findSimilarity(row, other, products[other]));
+                }
+            }
+            resetProducts(row, products);
+            exact.copySorted(0, exactRows, exactSimilarities, 0);
+            Set<Integer> found = new HashSet<>(model.getNeighbours(matrix.getRowId(row)));
+            for (int i = 0; i < exact.size(0); i++) {
+                if (found.contains(matrix.getRowId(exactRows[i]))) {
+                    foundCount++;
                 }
-                column.put(rowI, valueToWrite);
             }
+            exactCount += exact.size(0);
         }
+        return exactCount == 0 ? 1 : (double) foundCount / exactCount;
+    }
 
-        return preparedMatrix;
+    public double findSimilarity(int filmId1, int filmId2) {
+        int row1 = matrix.findRowIndex(filmId1);
+        int row2 = matrix.findRowIndex(filmId2);
+        if (row1 < 0 || row2 < 0) {
+            return Double.NaN;
+        }
+        double[] products = new double[matrix.getRowsCount()];
+        accumulateProducts(row1, products);
+        return findSimilarity(row1, row2, products[row2]);
     }
 
+    private List<Integer> getRecommendationsInternal(int userIndex, Optional<Integer> limit) {
+        int rowsCount = matrix.getRowsCount();
+        boolean[] rated = new boolean[rowsCount];
+        double[] products = new double[rowsCount];
+        AbsentRatings absentRatings = new AbsentRatings(rowsCount, HOW_MANY_SIMILAR_ITEMS_TO_ANALYZE);
 
-    private Matrix findSimilarities() {
-        Matrix similarities = new Matrix();
-        for (Integer rowI : preparedMatrix.getRowIndexes()) {
-            for (Integer rowI2 : preparedMatrix.getRowIndexes()) {
-                if (similarities.getValue(rowI2, rowI) != null && similarities.getValue(rowI2, rowI).isPresent()) {
-                    similarities.writeValue(rowI, rowI2, similarities.getValue(rowI2, rowI));
-                } else {
-                    Map<Integer, Double> vector1 = simplifyVector(preparedMatrix.getRow(rowI));
-                    Map<Integer, Double> vector2 = simplifyVector(preparedMatrix.getRow(rowI2));
-                    Double similarity = findCosineSimilarity(vector1, vector2);
-                    similarities.writeValue(rowI, rowI2, Optional.of(similarity));
-                }
+        for (int entry = matrix.getColumnStart(userIndex); entry < matrix.getColumnEnd(userIndex); entry++) {
+            int ratedRow = matrix.getRowIndexAt(entry);
+            rated[ratedRow] = true;
+            accumulateProducts(ratedRow, products);
+            for (int row = 0; row < rowsCount; row++) {
+                absentRatings.push(row, findSimilarity(row, ratedRow, products[row]), matrix.getColumnValueAt(entry));
             }
+            resetProducts(ratedRow, products);
         }
-        return similarities;
-    }
 
-    private Map<Integer, Double> simplifyVector (Map<Integer, Optional<Double>> vector) {
-        return vector.entrySet().stream()
-                .collect(
-                        HashMap::new,
-                        (map,e) -> {
-                            if (e.getValue().isPresent()) {
-                                map.put(e.getKey(),e.getValue().get());
-                            } else {
-                                map.put(e.getKey(),(double)0);
-                            }
-                        },
-                        HashMap::putAll
-                );
+        List<Integer> absentItems = new ArrayList<>();
+        for (int row = 0; row < rowsCount; row++) {
+            if (!rated[row]) {
+                absentItems.add(row);
+            }
+        }
+        return absentRatings.toSortedIds(matrix::getRowId, absentItems, limit);
     }
 
+    /*
+     * compares every row of [fromRow, toRow) with all rows after it
+     */
+    private NeighbourHeaps findNeighbours(int fromRow, int toRow, int neighboursCount) {
+        int rowsCount = matrix.getRowsCount();
+        NeighbourHeaps neighbours = new NeighbourHeaps(rowsCount, neighboursCount);
+        double[] products = new double[rowsCount];
+        for (int row = fromRow; row < toRow; row++) {
+            accumulateProducts(row, products);
+            for (int other = row + 1; other < rowsCount; other++) {
+                double similarity = findSimilarity(row, other, products[other]);
+                neighbours.offer(row, other, similarity);
+                neighbours.offer(other, row, similarity);
+            }
+            resetProducts(row, products);
+        }
+        return neighbours;
+    }
 
-    private Double findAverageValue(Map<Integer, Optional<Double>> map) {
-        return map.values().stream()
-                .map(e -> {
-                    if (e.isEmpty() && treatEmptyAsZeros) {
-                        return Optional.of((double) 0);
-                    }
-                    return e;
-                })
-                .filter(Optional::isPresent)
-                .mapToDouble(Optional::get)
-                .average()
-                .getAsDouble();
+    /*
+     * compares every row of [fromRow, toRow) with all other rows, offering only to the heaps of these rows
+     */
+    private void findRowNeighbours(int fromRow, int toRow, NeighbourHeaps neighbours) {
+        int rowsCount = matrix.getRowsCount();
+        double[] products = new double[rowsCount];
+        for (int row = fromRow; row < toRow; row++) {
+            accumulateProducts(row, products);
+            for (int other = 0; other < rowsCount; other++) {
+                if (other != row) {
+                    neighbours.offer(row, other, findSimilarity(row, other, products[other]));
+                }
+            }
+            resetProducts(row, products);
+        }
     }
 
-    //function accepts two vectors with non-null non-empty equal keys and double values
-    private Double findCosineSimilarity(Map<Integer, Double> vector1, Map<Integer, Double> vector2) {
-        if (vector1 == null || vector2 == null) {
-            return null;
+    private class NeighboursTask extends RecursiveAction {
+        private final int fromRow;
+        private final int toRow;
+        private final int parts;
+        private final NeighbourHeaps neighbours;
+
+        NeighboursTask(int fromRow, int toRow, int parts, NeighbourHeaps neighbours) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.parts = parts;
+            this.neighbours = neighbours;
         }
-        if (vector1.isEmpty() || vector2.isEmpty()) {
-            return null;
+
+        @Override
+        protected void compute() {
+            if (parts == 1 || toRow - fromRow < 2) {
+                findRowNeighbours(fromRow, toRow, neighbours);
+                return;
+            }
+            int leftParts = parts / 2;
+            int middle = fromRow + (int) ((long) (toRow - fromRow) * leftParts / parts);
+            invokeAll(new NeighboursTask(fromRow, middle, leftParts, neighbours),
+                    new NeighboursTask(middle, toRow, parts - leftParts, neighbours));
         }
-        if (vector1.containsKey(null) || vector2.containsKey(null)) {
-            return null;
+    }
+
+    /*
+     * products[row] = sum over users who rated both row and ratedRow, using raw rates when empty cells are zeros
+     * (the rest of the centered dot product is restored in findSimilarity) and centered rates otherwise;
+     * products must be zeros before, resetProducts zeros them back touching only the same cells
+     */
+    private void accumulateProducts(int ratedRow, double[] products) {
+        for (int rowEntry = matrix.getRowStart(ratedRow); rowEntry < matrix.getRowEnd(ratedRow); rowEntry++) {
+            int column = matrix.getColumnIndexAt(rowEntry);
+            double value = valueForProduct(column, matrix.getRowValueAt(rowEntry));
+            for (int entry = matrix.getColumnStart(column); entry < matrix.getColumnEnd(column); entry++) {
+                products[matrix.getRowIndexAt(entry)] += value * valueForProduct(column, matrix.getColumnValueAt(entry));
+            }
         }
-        if (!vector1.keySet().equals(vector2.keySet())) {
-            return null;
+    }
+
+    private void resetProducts(int ratedRow, double[] products) {
+        for (int rowEntry = matrix.getRowStart(ratedRow); rowEntry < matrix.getRowEnd(ratedRow); rowEntry++) {
+            int column = matrix.getColumnIndexAt(rowEntry);
+            for (int entry = matrix.getColumnStart(column); entry < matrix.getColumnEnd(column); entry++) {
+                products[matrix.getRowIndexAt(entry)] = 0;
+            }
         }
-        Double lenOfVector1 = findVectorLength(vector1);
-        Double lenOfVector2 = findVectorLength(vector2);
-        Double scalarProductOfVectors = findScalarProductOfVectors(vector1, vector2);
-        return scalarProductOfVectors / (lenOfVector1 * lenOfVector2);
     }
 
-    private Double findVectorLength(Map<Integer, Double> vector) {
-        return Math.sqrt(vector.values().stream().map(e->Math.pow(e,2)).mapToDouble(e->e).sum());
+    private double valueForProduct(int column, double value) {
+        return treatEmptyAsZeros ? value : value - columnAverages[column];
+    }
+
+    private double findSimilarity(int row1, int row2, double product) {
+        double scalarProduct = treatEmptyAsZeros ?
+                product - (rowOffsets[row1] + rowOffsets[row2]) + averagesSquaresSum :
+                product;
+        return scalarProduct / (rowNorms[row1] * rowNorms[row2]);
+    }
+
+    private double[] findColumnAverages() {
+        double[] averages = new double[matrix.getColumnsCount()];
+        for (int column = 0; column < averages.length; column++) {
+            double sum = 0;
+            for (int entry = matrix.getColumnStart(column); entry < matrix.getColumnEnd(column); entry++) {
+                sum += matrix.getColumnValueAt(entry);
+            }
+            int count = treatEmptyAsZeros ?
+                    matrix.getRowsCount() :
+                    matrix.getColumnEnd(column) - matrix.getColumnStart(column);
+            averages[column] = sum / count;
+        }
+        return averages;
     }
 
-    private Double findScalarProductOfVectors(Map<Integer, Double> vector1, Map<Integer, Double> vector2) {
-        return vector1.entrySet().stream()
-                .map(e->e.getValue()*vector2.get(e.getKey()))
-                .mapToDouble(e->e)
-                .sum();
+    private void prepareRows() {
+        for (int row = 0; row < matrix.getRowsCount(); row++) {
+            double offset = 0;
+            double squaresSum = 0;
+            for (int entry = matrix.getRowStart(row); entry < matrix.getRowEnd(row); entry++) {
+                int column = matrix.getColumnIndexAt(entry);
+                double value = matrix.getRowValueAt(entry);
+                offset += value * columnAverages[column];
+                squaresSum += Math.pow(valueForProduct(column, value), 2);
+            }
+            rowOffsets[row] = offset;
+            rowNorms[row] = treatEmptyAsZeros ?
+                    Math.sqrt(Math.max(squaresSum - 2 * offset + averagesSquaresSum, 0)) :
+                    Math.sqrt(squaresSum);
+        }
     }
 }
@@ -0,0 +1,82 @@
+package ru.yandex.practicum.filmorate.utilities.recommendations;
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of the ratings and of the most similar films (neighbours) of every film.
+ * Neighbour lists are stored like CSR rows: neighbours of the film with row index r are at
+ * [neighbourPointers[r], neighbourPointers[r + 1]) sorted by similarity descending.
+ * Recommendations score only films found in the neighbour lists of the films rated by the user.
+ */
+public class SimilarityModel {
+    private final Matrix matrix;
+    private final int[] neighbourPointers;
+    private final int[] neighbourRows;
+    private final float[] neighbourSimilarities;
+
+    SimilarityModel(Matrix matrix, NeighbourHeaps neighbours) {
+        this.matrix = matrix;
+        int rowsCount = matrix.getRowsCount();
+        this.neighbourPointers = new int[rowsCount + 1];
+        for (int row = 0; row < rowsCount; row++) {
+            neighbourPointers[row + 1] = neighbourPointers[row] + neighbours.size(row);
+        }
+        this.neighbourRows = new int[neighbourPointers[rowsCount]];
+        this.neighbourSimilarities = new float[neighbourPointers[rowsCount]];
+        for (int row = 0; row < rowsCount; row++) {
+            neighbours.copySorted(row, neighbourRows, neighbourSimilarities, neighbourPointers[row]);
+        }
+    }
+
+    public List<Integer> getRecommendations(int userId, Optional<Integer> limit) {
+        int userIndex = matrix.findColumnIndex(userId);
+        if (userIndex < 0) {
+            return Collections.emptyList();
+        }
+        boolean[] rated = new boolean[matrix.getRowsCount()];
+        for (int entry = matrix.getColumnStart(userIndex); entry < matrix.getColumnEnd(userIndex); entry++) {
+            rated[matrix.getRowIndexAt(entry)] = true;
+        }
+        AbsentRatings absentRatings = new AbsentRatings(matrix.getRowsCount(),
+                Recommender.HOW_MANY_SIMILAR_ITEMS_TO_ANALYZE);
+        List<Integer> candidates = new ArrayList<>();
+        for (int entry = matrix.getColumnStart(userIndex); entry < matrix.getColumnEnd(userIndex); entry++) {
+            int ratedRow = matrix.getRowIndexAt(entry);
+            for (int i = neighbourPointers[ratedRow]; i < neighbourPointers[ratedRow + 1]; i++) {
+                int row = neighbourRows[i];
+                if (rated[row]) {
+                    continue;
+                }
+                if (!absentRatings.contains(row)) {
+                    candidates.add(row);
+                }
+                absentRatings.push(row, neighbourSimilarities[i], matrix.getColumnValueAt(entry));
+            }
+        }
+        return absentRatings.toSortedIds(matrix::getRowId, candidates, limit);
+    }
+
+    Matrix getMatrix() {
+        return matrix;
+    }
+
+    int[] getNeighbourPointers() {
+        return neighbourPointers;
+    }
+
+    int[] getNeighbourRows() {
+        return neighbourRows;
+    }
+
+    public List<Integer> getNeighbours(int filmId) {
+        int row = matrix.findRowIndex(filmId);
+        if (row < 0) {
+            return Collections.emptyList();
+        }
+        List<Integer> neighbours = new ArrayList<>();
+        for (int i = neighbourPointers[row]; i < neighbourPointers[row + 1]; i++) {
+            neighbours.add(matrix.getRowId(neighbourRows[i]));
+        }
+        return neighbours;
+    }
+}
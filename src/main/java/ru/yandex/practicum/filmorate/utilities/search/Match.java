@@ -0,0 +1,8 @@
+package ru.yandex.practicum.filmorate.utilities.search;
+
+/**
+ * How a text contains a query, from the weakest match to the strongest.
+ */
+public enum Match {
+    SUBSTRING, PREFIX, EXACT
+}
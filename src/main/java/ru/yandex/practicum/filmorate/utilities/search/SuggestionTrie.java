@@ -0,0 +1,260 @@
+package ru.yandex.practicum.filmorate.utilities.search;
+
+import java.util.*;
+
+/**
+ * Immutable radix trie of keys, case ignored, where every node keeps its best completions ranked by weight,
+ * so a lookup walks the prefix and copies a ready list: nothing is allocated but the result.
+ * Nodes are stored in parallel arrays, labels point into the keys instead of copying them.
+ */
+public final class SuggestionTrie<T> {
+    private final char[][] keys;
+    private final Object[] values;
+    private final int[] labelKey;
+    private final int[] labelFrom;
+    private final int[] labelTo;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] children;
+    private final int[] topStart;
+    private final int[] topCount;
+    private final int[] top;
+
+    private SuggestionTrie(char[][] keys, Object[] values, int[] labelKey, int[] labelFrom, int[] labelTo,
+                           int[] firstChild, int[] childCount, int[] children,
+                           int[] topStart, int[] topCount, int[] top) {
+        this.keys = keys;
+        this.values = values;
+        this.labelKey = labelKey;
+        this.labelFrom = labelFrom;
+        this.labelTo = labelTo;
+        this.firstChild = firstChild;
+        this.childCount = childCount;
+        this.children = children;
+        this.topStart = topStart;
+        this.topCount = topCount;
+        this.top = top;
+    }
+
+    public static <T> Builder<T> builder(int maxCompletions) {
+        return new Builder<>(maxCompletions);
+    }
+
+    /**
+     * @return values of at most limit heaviest keys starting with the prefix, heaviest first
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> complete(String prefix, int limit) {
+        if (labelKey.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int node = 0;
+        int position = 0;
+        while (true) {
+            char[] key = keys[labelKey[node]];
+            for (int i = labelFrom[node]; i < labelTo[node] && position < prefix.length(); i++, position++) {
+                if (key[i] != Character.toLowerCase(prefix.charAt(position))) {
+                    return Collections.emptyList();
+                }
+            }
+            if (position == prefix.length()) {
+                break;
+            }
+            node = findChild(node, Character.toLowerCase(prefix.charAt(position)));
+            if (node < 0) {
+                return Collections.emptyList();
+            }
+        }
+        int count = Integer.min(limit, topCount[node]);
+        List<T> completions = new ArrayList<>(count);
+        for (int i = topStart[node]; i < topStart[node] + count; i++) {
+            completions.add((T) values[top[i]]);
+        }
+        return completions;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    /*
+     * children are sorted by the first char of their labels
+     */
+    private int findChild(int node, char c) {
+        int low = firstChild[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int child = children[middle];
+            char first = keys[labelKey[child]][labelFrom[child]];
+            if (first < c) {
+                low = middle + 1;
+            } else if (first > c) {
+                high = middle - 1;
+            } else {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    public static final class Builder<T> {
+        private final int maxCompletions;
+        private final List<Entry<T>> entries = new ArrayList<>();
+
+        private Builder(int maxCompletions) {
+            this.maxCompletions = maxCompletions;
+        }
+
+        public Builder<T> add(String key, T value, long weight) {
+            char[] normalized = new char[key.length()];
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] = Character.toLowerCase(key.charAt(i));
+            }
+            entries.add(new Entry<>(normalized, value, weight));
+            return this;
+        }
+
+        public SuggestionTrie<T> build() {
+            entries.sort((first, second) -> Arrays.compare(first.key, second.key));
+            List<char[]> distinctKeys = new ArrayList<>();
+            List<int[]> entriesOfKeys = new ArrayList<>();
+            for (int i = 0; i < entries.size(); ) {
+                int end = i;
+                while (end < entries.size() && Arrays.equals(entries.get(i).key, entries.get(end).key)) {
+                    end++;
+                }
+                distinctKeys.add(entries.get(i).key);
+                entriesOfKeys.add(new int[]{i, end});
+                i = end;
+            }
+            Nodes nodes = new Nodes(distinctKeys.toArray(new char[0][]), entriesOfKeys);
+            if (!distinctKeys.isEmpty()) {
+                nodes.build(0, distinctKeys.size(), 0);
+            }
+            return new SuggestionTrie<>(nodes.keys, entries.stream().map(entry -> entry.value).toArray(),
+                    nodes.labelKey.toArray(), nodes.labelFrom.toArray(), nodes.labelTo.toArray(),
+                    nodes.firstChild.toArray(), nodes.childCount.toArray(), nodes.children.toArray(),
+                    nodes.topStart.toArray(), nodes.topCount.toArray(), nodes.top.toArray());
+        }
+
+        /*
+         * a node covers a range of sorted keys; its label runs from the end of the parent label
+         * to the longest prefix the whole range shares
+         */
+        private class Nodes {
+            private final char[][] keys;
+            private final List<int[]> entriesOfKeys;
+            private final IntList labelKey = new IntList();
+            private final IntList labelFrom = new IntList();
+            private final IntList labelTo = new IntList();
+            private final IntList firstChild = new IntList();
+            private final IntList childCount = new IntList();
+            private final IntList children = new IntList();
+            private final IntList topStart = new IntList();
+            private final IntList topCount = new IntList();
+            private final IntList top = new IntList();
+
+            Nodes(char[][] keys, List<int[]> entriesOfKeys) {
+                this.keys = keys;
+                this.entriesOfKeys = entriesOfKeys;
+            }
+
+            int build(int low, int high, int from) {
+                int node = labelKey.size();
+                int to = commonPrefixLength(keys[low], keys[high - 1]);
+                labelKey.add(low);
+                labelFrom.add(from);
+                labelTo.add(to);
+                firstChild.add(0);
+                childCount.add(0);
+                topStart.add(0);
+                topCount.add(0);
+
+                List<Integer> candidates = new ArrayList<>();
+                int next = low;
+                if (keys[low].length == to) {
+                    int[] keyEntries = entriesOfKeys.get(low);
+                    for (int entry = keyEntries[0]; entry < keyEntries[1]; entry++) {
+                        candidates.add(entry);
+                    }
+                    next++;
+                }
+                IntList nodeChildren = new IntList();
+                while (next < high) {
+                    int end = next + 1;
+                    while (end < high && keys[end][to] == keys[next][to]) {
+                        end++;
+                    }
+                    int child = build(next, end, to);
+                    nodeChildren.add(child);
+                    for (int i = topStart.get(child); i < topStart.get(child) + topCount.get(child); i++) {
+                        candidates.add(top.get(i));
+                    }
+                    next = end;
+                }
+
+                firstChild.set(node, children.size());
+                childCount.set(node, nodeChildren.size());
+                for (int i = 0; i < nodeChildren.size(); i++) {
+                    children.add(nodeChildren.get(i));
+                }
+                candidates.sort(Comparator.<Integer>comparingLong(entry -> entries.get(entry).weight).reversed()
+                        .thenComparing(Comparator.naturalOrder()));
+                topStart.set(node, top.size());
+                topCount.set(node, Integer.min(maxCompletions, candidates.size()));
+                candidates.stream().limit(maxCompletions).forEach(top::add);
+                return node;
+            }
+        }
+
+        private static int commonPrefixLength(char[] first, char[] second) {
+            int length = Integer.min(first.length, second.length);
+            int i = 0;
+            while (i < length && first[i] == second[i]) {
+                i++;
+            }
+            return i;
+        }
+    }
+
+    private static final class Entry<T> {
+        private final char[] key;
+        private final T value;
+        private final long weight;
+
+        Entry(char[] key, T value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
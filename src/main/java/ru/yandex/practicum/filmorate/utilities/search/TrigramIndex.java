@@ -0,0 +1,112 @@
+package ru.yandex.practicum.filmorate.utilities.search;
+
+import ru.yandex.practicum.filmorate.utilities.bitmap.IntBitmap;
+
+import java.util.*;
+
+/**
+ * Texts by id with an inverted index of their trigrams, case ignored: a substring query is answered
+ * by intersecting posting lists of its trigrams and checking only the candidates left.
+ * Queries shorter than a trigram are checked against every text. Not safe for concurrent use.
+ */
+public class TrigramIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<Integer, String> texts = new HashMap<>();
+    private final Map<Long, IntBitmap> postings = new HashMap<>();
+
+    public void put(int id, String text) {
+        remove(id);
+        String normalized = normalize(text);
+        texts.put(id, normalized);
+        for (long trigram : trigrams(normalized)) {
+            postings.computeIfAbsent(trigram, key -> new IntBitmap()).add(id);
+        }
+    }
+
+    public void remove(int id) {
+        String text = texts.remove(id);
+        if (text == null) {
+            return;
+        }
+        for (long trigram : trigrams(text)) {
+            IntBitmap ids = postings.get(trigram);
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                postings.remove(trigram);
+            }
+        }
+    }
+
+    public void clear() {
+        texts.clear();
+        postings.clear();
+    }
+
+    /**
+     * @return ids of the texts containing the query, ascending
+     */
+    public int[] find(String query) {
+        String normalized = normalize(query);
+        if (normalized.length() < GRAM_LENGTH) {
+            return texts.entrySet().stream()
+                    .filter(text -> text.getValue().contains(normalized))
+                    .mapToInt(Map.Entry::getKey)
+                    .sorted()
+                    .toArray();
+        }
+        List<IntBitmap> lists = new ArrayList<>();
+        for (long trigram : trigrams(normalized)) {
+            IntBitmap ids = postings.get(trigram);
+            if (ids == null) {
+                return new int[0];
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(IntBitmap::cardinality));
+        IntBitmap candidates = lists.get(0);
+        for (int i = 1; i < lists.size() && !candidates.isEmpty(); i++) {
+            candidates = candidates.and(lists.get(i));
+        }
+        return Arrays.stream(candidates.toArray())
+                .filter(id -> texts.get(id).contains(normalized))
+                .toArray();
+    }
+
+    /**
+     * @return text of the id in lower case, null if the id is not indexed
+     */
+    public String getText(int id) {
+        return texts.get(id);
+    }
+
+    /**
+     * @return how the text of the id matches the query, null if it does not contain the query
+     */
+    public Match match(int id, String query) {
+        String text = texts.get(id);
+        String normalized = normalize(query);
+        if (text == null || !text.contains(normalized)) {
+            return null;
+        }
+        if (text.equals(normalized)) {
+            return Match.EXACT;
+        }
+        return text.startsWith(normalized) ? Match.PREFIX : Match.SUBSTRING;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    /*
+     * three chars packed into a long, so a trigram is a map key without a substring
+     */
+    private static Set<Long> trigrams(String text) {
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            trigrams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return trigrams;
+    }
+}
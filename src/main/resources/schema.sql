@@ -17,7 +17,8 @@ create table if not exists PUBLIC.FILMS
     DESCRIPTION  CHARACTER VARYING(200) not null,
     RELEASE_DATE DATE                   not null,
     DURATION     INTEGER                not null,
-    MPA_ID       INTEGER                references MPA on update cascade on delete cascade
+    MPA_ID       INTEGER                references MPA on update cascade on delete cascade,
+    LIKES_COUNT  INTEGER                DEFAULT 0 not null
     );
 
 create table if not exists PUBLIC.USERS
@@ -41,8 +42,8 @@ create table if not exists PUBLIC.REVIEWS
 
 create table if not exists PUBLIC.FILM_GENRE
 (
-    FILM_ID  INTEGER references FILMS on update cascade on delete cascade,
-    GENRE_ID INTEGER references GENRES on update cascade on delete cascade,
+    FILM_ID     INTEGER references FILMS on update cascade on delete cascade,
+    GENRE_ID    INTEGER references GENRES on update cascade on delete cascade,
     PRIMARY KEY (FILM_ID, GENRE_ID)
     );
 
@@ -96,3 +97,5 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILM_DIRECTOR
     FILM_ID INTEGER references FILMS on update cascade on delete cascade,
     PRIMARY KEY (DIRECTOR_ID, FILM_ID)
     );
+
+CREATE INDEX IF NOT EXISTS PUBLIC.FILMS_LIKES_COUNT_IDX ON PUBLIC.FILMS (LIKES_COUNT DESC, ID);
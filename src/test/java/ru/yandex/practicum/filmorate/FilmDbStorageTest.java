@@ -1,14 +1,24 @@
 package ru.yandex.practicum.filmorate;
 
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.IdIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeIndex;
 import ru.yandex.practicum.filmorate.model.SortBy;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.PopularityService;
+import ru.yandex.practicum.filmorate.service.SearchService;
+import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.time.LocalDate;
 import java.util.*;
@@ -24,6 +34,53 @@ class FilmDbStorageTest {
     private static final int WRONG_ID = 9999;
     private static final int EXPECTED_FILMS_COUNT = 3;
     private final FilmDbStorage filmDdStorage;
+    private final LikeIndex likeIndex;
+    private final FilmCache filmCache;
+    private final IdIndex idIndex;
+    private final FilmService filmService;
+    private final PopularityService popularityService;
+    private final SearchService searchService;
+    private final DirectorService directorService;
+    private final TransactionTemplate transactionTemplate;
+    private final UserService userService;
+
+    @BeforeEach
+    void resetInMemoryIndexes() {
+        likeIndex.reload();
+        filmCache.invalidateAll();
+        idIndex.reload();
+        searchService.reload();
+        popularityService.reload();
+    }
+
+    @Test
+    void likeIndexShouldTakeOnlyCommittedLikes() {
+        assertThat(likeIndex.getLikesCount(1)).isEqualTo(1);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filmDdStorage.addLike(1, 5);
+            assertThat(likeIndex.getLikesCount(1)).isEqualTo(1);
+            status.setRollbackOnly();
+        });
+        assertThat(likeIndex.getLikesCount(1)).isEqualTo(1);
+
+        transactionTemplate.executeWithoutResult(status -> filmDdStorage.addLike(1, 5));
+        assertThat(likeIndex.getLikesCount(1)).isEqualTo(2);
+    }
+
+    @Test
+    void deletedUserShouldChangeOnlyCountsOfLikedFilms() {
+        assertThat(popularityService.getLikesCount(2)).isEqualTo(3);
+
+        userService.deleteUserById(3);
+
+        assertThat(popularityService.getLikesCount(1)).isZero();
+        assertThat(popularityService.getLikesCount(2)).isEqualTo(2);
+        assertThat(popularityService.getLikesCount(3)).isEqualTo(1);
+        assertThat(popularityService.getTopNMostPopular(3, Optional.empty(), Optional.empty(), FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(2, 3, 1);
+    }
 
     @Test
     void testFindFilmById() {
@@ -39,6 +96,23 @@ class FilmDbStorageTest {
         assertThat(film).isNotPresent();
     }
 
+    @Test
+    void existsByIdShouldFollowSavedAndDeletedFilms() {
+        assertThat(filmDdStorage.existsById(1)).isTrue();
+        assertThat(filmDdStorage.existsById(WRONG_ID)).isFalse();
+
+        filmDdStorage.deleteById(1);
+        assertThat(filmDdStorage.existsById(1)).isFalse();
+
+        Film film = new Film();
+        film.setName("My film");
+        film.setDescription("Awesome movie");
+        film.setDuration(120);
+        film.setMpa(new Mpa(1, "G"));
+        film.setReleaseDate(LocalDate.of(2022, 1, 11));
+        assertThat(filmDdStorage.existsById(filmDdStorage.save(film).getId())).isTrue();
+    }
+
     @Test
     void testFindAllFilms() {
         List<Film> films = new ArrayList<>(filmDdStorage.findAll());
@@ -91,6 +165,7 @@ class FilmDbStorageTest {
         film.setMpa(new Mpa(1, "G"));
         film.setReleaseDate(LocalDate.of(2022, 1, 11));
         film.setGenres(new LinkedHashSet<>(Set.of(new Genre(1, "Комедия"))));
+        film.setWhoLikedUserIds(new HashSet<>());
 
         filmDdStorage.update(film);
         Optional<Film> updatedFilm = filmDdStorage.findById(1);
@@ -101,20 +176,65 @@ class FilmDbStorageTest {
 
         film.setId(WRONG_ID);
 
-        updatedFilm = filmDdStorage.update(film);
+        assertThat(filmDdStorage.update(film)).isNotPresent();
+    }
+
+    @Test
+    void updateWithoutLikesShouldKeepThem() {
+        Film film = new Film();
+        film.setId(2);
+        film.setName("Snatch 2");
+        film.setDescription("Description");
+        film.setDuration(104);
+        film.setMpa(new Mpa(4, "R"));
+        film.setReleaseDate(LocalDate.of(2000, 8, 23));
+
+        Optional<FilmUpdate> update = filmDdStorage.update(film);
+        assertThat(update).isPresent();
+        assertThat(update.get().getAddedLikeUserIds()).isEmpty();
+        assertThat(update.get().getRemovedLikeUserIds()).isEmpty();
+
+        Film updatedFilm = filmDdStorage.findById(2).orElseThrow();
+        assertThat(updatedFilm.getName()).isEqualTo("Snatch 2");
+        assertThat(updatedFilm.getWhoLikedUserIds()).containsExactlyInAnyOrder(1, 2, 3);
+        assertThat(updatedFilm.getLikesCount()).isEqualTo(3);
+    }
 
-        assertThat(updatedFilm).isNotPresent();
+    @Test
+    void updateShouldChangeOnlyChangedGenresAndLikes() {
+        Film film = filmDdStorage.findById(2).orElseThrow();
+        film.setName("Snatch 2");
+        filmDdStorage.update(film);
+        Film updatedFilm = filmDdStorage.findById(2).orElseThrow();
+        assertThat(updatedFilm.getName()).isEqualTo("Snatch 2");
+        assertThat(updatedFilm.getWhoLikedUserIds()).containsExactlyInAnyOrder(1, 2, 3);
+        assertThat(updatedFilm.getGenres()).extracting(Genre::getId).containsExactly(1, 6);
+        assertThat(updatedFilm.getDirectors()).extracting(Director::getId).containsExactly(2);
+
+        film.setGenres(new LinkedHashSet<>(List.of(new Genre(1, "Комедия"), new Genre(4, "Триллер"))));
+        film.setWhoLikedUserIds(new HashSet<>(Set.of(1, 4)));
+        film.setDirectors(new HashSet<>());
+        filmDdStorage.update(film);
+        updatedFilm = filmDdStorage.findById(2).orElseThrow();
+        assertThat(updatedFilm.getWhoLikedUserIds()).containsExactlyInAnyOrder(1, 4);
+        assertThat(updatedFilm.getGenres()).extracting(Genre::getId).containsExactly(1, 4);
+        assertThat(updatedFilm.getDirectors()).isEmpty();
+        popularityService.reload();
+        assertThat(popularityService.getTopNMostPopular(3, Optional.of(4), Optional.empty(), FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(2, 3);
     }
 
     @Test
     void testLimitInMostPopularFilms() {
         int n = 2;
-        filmDdStorage.addLike(1, 1);
-        filmDdStorage.addLike(1, 2);
-        filmDdStorage.addLike(1, 3);
-        filmDdStorage.addLike(1, 4);
+        filmService.addLikeToFilm(1, 1);
+        filmService.addLikeToFilm(1, 2);
+        filmService.addLikeToFilm(1, 3);
+        filmService.addLikeToFilm(1, 4);
         Film expectedFilm = filmDdStorage.findById(1).get();
-        Collection<Film> topNMostPopular = filmDdStorage.findTopNMostPopular(n, Optional.empty(), Optional.empty());
+        Collection<Film> topNMostPopular = filmService.getTopNMostPopular(n, Optional.empty(), Optional.empty(),
+                FilmView.full);
         assertThat(topNMostPopular).hasSize(2);
         assertEquals(expectedFilm, topNMostPopular.stream().findFirst().get());
     }
@@ -123,7 +243,8 @@ class FilmDbStorageTest {
     void testMostPopularByGenreFilms() {
         int n = 3;
         Film expectedFilm = filmDdStorage.findById(2).get();
-        Collection<Film> topNMostPopular = filmDdStorage.findTopNMostPopular(n, Optional.of(6), Optional.empty());
+        Collection<Film> topNMostPopular = filmService.getTopNMostPopular(n, Optional.of(6), Optional.empty(),
+                FilmView.full);
         assertThat(topNMostPopular).hasSize(2);
         assertEquals(expectedFilm, topNMostPopular.stream().findFirst().get());
     }
@@ -132,11 +253,100 @@ class FilmDbStorageTest {
     void testMostPopularByYearFilms() {
         int n = 5;
         Film expectedFilm = filmDdStorage.findById(1).get();
-        Collection<Film> topNMostPopular = filmDdStorage.findTopNMostPopular(n, Optional.empty(), Optional.of(1982));
+        Collection<Film> topNMostPopular = filmService.getTopNMostPopular(n, Optional.empty(), Optional.of(1982),
+                FilmView.full);
         assertThat(topNMostPopular).hasSize(1);
         assertEquals(expectedFilm, topNMostPopular.stream().findFirst().get());
     }
 
+    @Test
+    void testMostPopularByGenreAndYearFilms() {
+        assertThat(filmService.getTopNMostPopular(5, Optional.of(6), Optional.of(1983), FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(2);
+        assertThat(filmService.getTopNMostPopular(5, Optional.of(4), Optional.of(1983), FilmView.full)).isEmpty();
+    }
+
+    @Test
+    void likesCountShouldFollowLikesOfFilm() {
+        assertThat(filmDdStorage.addLike(1, 1)).isTrue();
+        assertThat(filmDdStorage.addLike(1, 1)).isFalse();
+        assertThat(filmDdStorage.addLike(1, 2)).isTrue();
+        assertThat(filmDdStorage.findPage(0, 1, FilmView.summary))
+                .extracting(Film::getLikesCount)
+                .containsExactly(3);
+
+        assertThat(filmDdStorage.deleteLike(1, 2)).isTrue();
+        assertThat(filmDdStorage.findPage(0, 1, FilmView.summary))
+                .extracting(Film::getLikesCount)
+                .containsExactly(2);
+    }
+
+    @Test
+    void popularityBoardsShouldFollowLikes() {
+        popularityService.reload();
+        assertThat(filmService.getTopNMostPopular(10, Optional.empty(), Optional.empty(), FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(2, 3, 1);
+
+        filmService.addLikeToFilm(1, 1);
+        filmService.addLikeToFilm(1, 2);
+        assertThat(filmService.getTopNMostPopular(2, Optional.empty(), Optional.empty(), FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(1, 2);
+        assertThat(filmService.getTopNMostPopular(10, Optional.of(6), Optional.of(1982), FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(1);
+
+        filmService.deleteLikeFromFilm(1, 2);
+        assertThat(filmService.getTopNMostPopular(10, Optional.of(6), Optional.empty(), FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(2, 1);
+        assertThat(filmService.getTopNMostPopular(10, Optional.of(6), Optional.of(1990), FilmView.full)).isEmpty();
+    }
+
+    @Test
+    void filmCacheShouldServeRepeatedReadsAndDropChangedFilms() {
+        long misses = filmCache.getMisses();
+        long hits = filmCache.getHits();
+        Film film = filmDdStorage.findById(3).get();
+        Film cachedFilm = filmDdStorage.findById(3).get();
+        assertThat(cachedFilm).isEqualTo(film).isNotSameAs(film);
+        assertEquals(misses + 1, filmCache.getMisses());
+        assertEquals(hits + 1, filmCache.getHits());
+        cachedFilm.setName("Jaws 2");
+        assertEquals("Jaws", filmDdStorage.findById(3).get().getName());
+
+        filmDdStorage.addLike(3, 2);
+        assertThat(filmDdStorage.findById(3).get().getWhoLikedUserIds()).containsExactlyInAnyOrder(1, 2, 3);
+        assertThat(filmDdStorage.findByIds(List.of(3, 1), FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(3, 1);
+        assertEquals(misses + 3, filmCache.getMisses());
+    }
+
+    @Test
+    void deletedUserShouldDropOnlyFilmsLikedByUser() {
+        filmDdStorage.findByIds(List.of(1, 2, 3), FilmView.full);
+        userService.deleteUserById(1);
+        assertEquals(1, filmCache.getSize());
+        assertThat(filmDdStorage.findById(2).get().getWhoLikedUserIds()).containsExactlyInAnyOrder(2, 3);
+        assertThat(filmDdStorage.findById(3).get().getWhoLikedUserIds()).containsExactly(3);
+    }
+
+    @Test
+    void summaryFilmsShouldBeReadWithoutLikesAndNotCached() {
+        filmCache.invalidateAll();
+        Collection<Film> films = filmDdStorage.findByIds(List.of(2, 3), FilmView.summary);
+        assertThat(films).extracting(Film::getId).containsExactly(2, 3);
+        assertThat(films).extracting(Film::getLikesCount).containsExactly(3, 2);
+        assertThat(films).allMatch(film -> film.getWhoLikedUserIds().isEmpty());
+        assertEquals(0, filmCache.getSize());
+
+        Film cached = filmDdStorage.findById(2).orElseThrow();
+        assertThat(filmDdStorage.findByIds(List.of(2), FilmView.summary)).containsExactly(cached);
+    }
+
     @Test
     void testAddLikeFromUser() {
         Film film = filmDdStorage.findById(3).get();
@@ -183,34 +393,93 @@ class FilmDbStorageTest {
         assertThat(commonFilms).isEmpty();
     }
 
+    @Test
+    void likeIndexShouldFollowLikesAndDeletions() {
+        assertEquals(2, likeIndex.getLikesCount(3));
+        assertEquals(2.0 / 3, likeIndex.findJaccardSimilarity(2, 3), 1e-9);
+
+        filmDdStorage.addLike(1, 1);
+        assertThat(likeIndex.findCommonFilms(1, 3)).containsExactly(1, 2, 3);
+        filmDdStorage.deleteLike(2, 1);
+        assertThat(likeIndex.findCommonFilms(1, 3)).containsExactly(1, 3);
+        filmDdStorage.deleteById(3);
+        assertThat(likeIndex.findCommonFilms(1, 3)).containsExactly(1);
+        assertEquals(0, likeIndex.getLikesCount(3));
+    }
+
     @Test
     void getFilmsByDirectorTest() {
-        List<Film> filmListSortByYear = new ArrayList<>(filmDdStorage.getFilmsByDirector(2, SortBy.year));
+        List<Film> filmListSortByYear = new ArrayList<>(filmDdStorage.getFilmsByDirector(2, SortBy.year, FilmView.full));
         assertEquals("Terminator", filmListSortByYear.get(0).getName());
 
-        List<Film> filmListSortByLikes = new ArrayList<>(filmDdStorage.getFilmsByDirector(2, SortBy.likes));
-        assertEquals("Terminator", filmListSortByLikes.get(0).getName());
+        List<Film> filmListSortByLikes = new ArrayList<>(filmDdStorage.getFilmsByDirector(2, SortBy.likes, FilmView.full));
+        assertEquals("Snatch", filmListSortByLikes.get(0).getName());
     }
 
     @Test
     void getFilmsSearchedForName() {
-        List<Film> films = new ArrayList<>(filmDdStorage.searchForFilmsByTitle("SnA"));
+        List<Film> films = new ArrayList<>(filmService.searchFilm("SnA", Set.of(SearchBy.title), 10, FilmView.full));
         assertEquals(2, films.get(0).getId());
         assertEquals("Snatch", films.get(0).getName());
     }
 
     @Test
     void getFilmsSearchedForDirector() {
-        List<Film> films = new ArrayList<>(filmDdStorage.searchForFilmsByDirector("Cas"));
+        List<Film> films = new ArrayList<>(filmService.searchFilm("Cas", Set.of(SearchBy.director), 10,
+                FilmView.full));
         assertEquals(3, films.get(0).getId());
         assertEquals("Jaws", films.get(0).getName());
     }
 
     @Test
     void getFilmsSearchedForDirectorAndTitle() {
-        List<Film> films = new ArrayList<>(filmDdStorage.searchForFilmsByDirectorAndTitle("s"));
-        assertEquals(2, films.size());
-        assertEquals("Jaws", films.get(0).getName());
-        assertEquals("Snatch", films.get(1).getName());
+        Collection<Film> films = filmService.searchFilm("s", Set.of(SearchBy.title, SearchBy.director), 10,
+                FilmView.full);
+        assertThat(films).extracting(Film::getName).containsExactlyInAnyOrder("Jaws", "Snatch");
+    }
+
+    @Test
+    void searchIndexShouldFollowFilmsAndDirectors() {
+        Set<SearchBy> both = Set.of(SearchBy.title, SearchBy.director);
+        assertThat(filmService.searchFilm("s", both, 100, FilmView.full))
+                .extracting(Film::getName)
+                .containsExactly("Snatch", "Jaws");
+        assertThat(filmService.searchFilm("s", both, 1, FilmView.full))
+                .extracting(Film::getName)
+                .containsExactly("Snatch");
+        assertThat(filmService.searchFilm("CAS", Set.of(SearchBy.director), 100, FilmView.full))
+                .extracting(Film::getName)
+                .containsExactly("Jaws");
+        assertThat(filmService.searchFilm("ATCH", Set.of(SearchBy.title), 100, FilmView.full))
+                .extracting(Film::getName)
+                .containsExactly("Snatch");
+        assertThat(filmService.searchFilm("tch sn", Set.of(SearchBy.title), 100, FilmView.full)).isEmpty();
+
+        assertThat(filmService.searchFilm("atch", Set.of(SearchBy.title), 100, FilmView.full))
+                .extracting(Film::getName)
+                .containsExactly("Snatch");
+        assertThat(filmService.searchFilm("spiel", Set.of(SearchBy.director), 100, FilmView.full)).isEmpty();
+        Film film = filmDdStorage.findById(2).orElseThrow();
+        film.setName("Lock, Stock");
+        film.setDirectors(new HashSet<>(Set.of(new Director(1, "Lucas"))));
+        filmService.update(film);
+        assertThat(filmService.searchFilm("atch", Set.of(SearchBy.title), 100, FilmView.full)).isEmpty();
+        assertThat(filmService.searchFilm("lucas", Set.of(SearchBy.director), 100, FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(2, 3);
+        filmService.addLikeToFilm(3, 2);
+        filmService.addLikeToFilm(3, 4);
+        assertThat(filmService.searchFilm("lucas", Set.of(SearchBy.director), 100, FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(3, 2);
+
+        directorService.update(new Director(1, "Spielberg"));
+        assertThat(filmService.searchFilm("spiel", Set.of(SearchBy.director), 100, FilmView.full))
+                .extracting(Film::getId)
+                .containsExactly(3, 2);
+        directorService.deleteById(1);
+        assertThat(filmService.searchFilm("spiel", Set.of(SearchBy.director), 100, FilmView.full)).isEmpty();
+        filmService.deleteFilmById(3);
+        assertThat(filmService.searchFilm("jaws", Set.of(SearchBy.title), 100, FilmView.full)).isEmpty();
     }
 }
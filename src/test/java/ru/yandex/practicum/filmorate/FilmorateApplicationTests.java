@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,15 +8,22 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import ru.yandex.practicum.filmorate.controller.FilmsController;
 import ru.yandex.practicum.filmorate.controller.UsersController;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.PopularityService;
+import ru.yandex.practicum.filmorate.service.SuggestService;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -40,6 +48,12 @@ class FilmorateApplicationTests {
     @Autowired
     private ObjectMapper mapper;
 
+    @Autowired
+    private PopularityService popularityService;
+
+    @Autowired
+    private SuggestService suggestService;
+
     @Test
     void contextLoads() {
         assertThat(filmController).isNotNull();
@@ -120,4 +134,144 @@ class FilmorateApplicationTests {
         assertEquals("{\"error\":\"Фильм с id = " + WRONG_ID + " не существует\"}", actual);
     }
 
+    @Test
+    @Sql({"/drop_schema.sql", "/schema.sql", "/test_data.sql"})
+    void filmsAndUsersShouldBeExportedWholeOrByPages() throws Exception {
+        List<Film> films = mapper.readValue(this.mockMvc.perform(get("/films"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8), new TypeReference<>() {});
+        assertThat(films).extracting(Film::getId).containsExactly(1, 2, 3);
+        assertThat(films.get(1).getWhoLikedUserIds()).containsExactlyInAnyOrder(1, 2, 3);
+
+        films = mapper.readValue(this.mockMvc.perform(get("/films?after=1&limit=1"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), new TypeReference<>() {});
+        assertThat(films).extracting(Film::getId).containsExactly(2);
+        assertThat(films.get(0).getGenres()).extracting(Genre::getId).containsExactlyInAnyOrder(1, 6);
+
+        List<User> users = mapper.readValue(this.mockMvc.perform(get("/users?limit=2"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), new TypeReference<>() {});
+        assertThat(users).extracting(User::getId).containsExactly(1, 2);
+        users = mapper.readValue(this.mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(), new TypeReference<>() {});
+        assertThat(users).extracting(User::getId).startsWith(1, 2, 3);
+
+        this.mockMvc.perform(get("/films?limit=0"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/films/popular?count=-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Sql({"/drop_schema.sql", "/schema.sql", "/test_data.sql"})
+    void filmsUsersAndLikesShouldBeImportedInBulk() throws Exception {
+        this.mockMvc.perform(post("/users/import")
+                        .contentType("application/x-ndjson")
+                        .content("{\"email\":\"a@mail.ru\",\"login\":\"a\",\"birthday\":\"2000-01-01\"}\n" +
+                                "{\"email\":\"wrong\",\"login\":\"b\",\"birthday\":\"2000-01-01\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.rowsRead").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.rowsImported").value(1));
+        this.mockMvc.perform(post("/films/import")
+                        .contentType("application/x-ndjson")
+                        .content("{\"name\":\"Alien\",\"description\":\"d\",\"releaseDate\":\"1979-05-25\"," +
+                                "\"duration\":117,\"mpa\":{\"id\":4},\"genres\":[{\"id\":4}],\"directors\":[{\"id\":2}]}\n" +
+                                "{\"name\":\"Unknown\",\"description\":\"d\",\"releaseDate\":\"1979-05-25\"," +
+                                "\"duration\":117,\"mpa\":{\"id\":99}}\n"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.rowsImported").value(1));
+
+        List<Film> films = mapper.readValue(this.mockMvc.perform(get("/films?after=3"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8), new TypeReference<>() {});
+        assertThat(films).extracting(Film::getName).containsExactly("Alien");
+        Film alien = films.get(0);
+        assertThat(alien.getDirectors()).extracting(Director::getId).containsExactly(2);
+
+        int alienId = alien.getId();
+        this.mockMvc.perform(post("/films/likes/import")
+                        .contentType("text/csv")
+                        .content("filmId,userId\n" + alienId + ",1\n" + alienId + ",2\n" + alienId + ",1\n" +
+                                alienId + "," + WRONG_ID + "\n1,2\n" + alienId + ",3\n"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.rowsRead").value(6))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.rowsImported").value(4));
+        this.mockMvc.perform(get("/films/popular?count=1&genreId=4"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").value("Alien"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].likesCount").value(3));
+        this.mockMvc.perform(get("/users/2/feed"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    @Sql({"/drop_schema.sql", "/schema.sql", "/test_data.sql"})
+    void suggestShouldCompletePrefixByLikes() throws Exception {
+        suggestService.rebuild();
+        this.mockMvc.perform(get("/films/suggest?prefix=&count=2"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].text").value("Coppola"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].by").value("director"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].likesCount").value(4))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].text").value("Snatch"));
+        this.mockMvc.perform(get("/films/suggest?prefix=TeR"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].text").value("Terminator"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].by").value("title"));
+        this.mockMvc.perform(get("/films/suggest?prefix=terminators"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(0));
+
+        this.mockMvc.perform(put("/films/1/like/1")).andExpect(status().isOk());
+        this.mockMvc.perform(put("/films/1/like/2")).andExpect(status().isOk());
+        suggestService.rebuildIfStale();
+        this.mockMvc.perform(get("/films/suggest?prefix=&count=1"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].likesCount").value(4));
+        suggestService.refreshWeightsIfStale();
+        this.mockMvc.perform(get("/films/suggest?prefix=&count=1"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].text").value("Coppola"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].likesCount").value(6));
+    }
+
+    @Test
+    @Sql({"/drop_schema.sql", "/schema.sql", "/test_data.sql"})
+    void summaryViewShouldHaveLikesCountWithoutLikes() throws Exception {
+        popularityService.reload();
+        this.mockMvc.perform(get("/films?after=1&limit=1&view=summary"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].name").value("Snatch"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].likesCount").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].whoLikedUserIds").doesNotExist());
+        this.mockMvc.perform(get("/films?view=summary"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].likesCount").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].whoLikedUserIds").doesNotExist());
+        this.mockMvc.perform(get("/films/popular?count=1&view=summary"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].likesCount").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].whoLikedUserIds").doesNotExist());
+        this.mockMvc.perform(get("/films/popular?count=1"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].whoLikedUserIds.length()").value(3));
+    }
+
+    @Test
+    void putOfSummaryFilmShouldKeepLikes() throws Exception {
+        String page = this.mockMvc.perform(get("/films?after=1&limit=1&view=summary"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        String summary = page.substring(1, page.length() - 1);
+        this.mockMvc.perform(put("/films").contentType(MediaType.APPLICATION_JSON).content(summary))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(get("/films/2"))
+                .andExpect(status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.whoLikedUserIds.length()").value(3));
+    }
 }
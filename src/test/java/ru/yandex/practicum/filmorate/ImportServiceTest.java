@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.service.ImportService;
+import ru.yandex.practicum.filmorate.service.PopularityService;
+import ru.yandex.practicum.filmorate.storage.film.FilmCache;
+import ru.yandex.practicum.filmorate.storage.film.LikeIndex;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "filmorate.import.chunk-size=2")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Sql({"/drop_schema.sql", "/schema.sql", "/test_data.sql"})
+class ImportServiceTest {
+    private final ImportService importService;
+    private final PopularityService popularityService;
+    private final LikeIndex likeIndex;
+    private final FilmCache filmCache;
+
+    @BeforeEach
+    void resetInMemoryIndexes() {
+        likeIndex.reload();
+        filmCache.invalidateAll();
+        popularityService.reload();
+    }
+
+    @Test
+    void failedImportShouldRefreshAfterSavedChunks() {
+        assertEquals(1, popularityService.getLikesCount(1));
+
+        assertThrows(ValidationException.class, () ->
+                importService.importLikes(new StringReader("filmId,userId\n1,1\n1,2\n1;4\n1,5\n"), true));
+
+        assertEquals(3, popularityService.getLikesCount(1));
+        assertEquals(3, likeIndex.getLikesCount(1));
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -12,13 +13,26 @@ import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.RecommendationService;
+import ru.yandex.practicum.filmorate.utilities.recommendations.AlsTrainer;
+import ru.yandex.practicum.filmorate.utilities.recommendations.FactorModel;
+import ru.yandex.practicum.filmorate.utilities.recommendations.LikeStatistics;
 import ru.yandex.practicum.filmorate.utilities.recommendations.Matrix;
+import ru.yandex.practicum.filmorate.utilities.recommendations.MinHashIndex;
+import ru.yandex.practicum.filmorate.utilities.recommendations.NeighbourSnapshot;
 import ru.yandex.practicum.filmorate.utilities.recommendations.Recommender;
+import ru.yandex.practicum.filmorate.utilities.recommendations.SimilarityModel;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
@@ -33,8 +47,15 @@ class RecommenderTest {
     @Autowired
     private ObjectMapper mapper;
 
+    @Autowired
+    private RecommendationService recommendationService;
+
+    @Autowired
+    private FilmService filmService;
+
     @Test
     void getRecommendationsForUserWithWrongIdShouldReturnEmptyList() throws Exception {
+        recommendationService.rebuildModel();
         MvcResult result = mockMvc.perform(get("/users/"+ WRONG_ID +"/recommendations")).andReturn();
         List<Film> recommendations = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {});
         assertEquals(List.of(), recommendations);
@@ -42,6 +63,7 @@ class RecommenderTest {
 
     @Test
     void getRecommendationsForUserWithIds123() throws Exception {
+        recommendationService.rebuildModel();
         MvcResult result = mockMvc.perform(get("/users/"+ 1 +"/recommendations")).andReturn();
         List<Film> recommendations = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {});
         assertEquals(1, recommendations.get(0).getId());
@@ -59,6 +81,199 @@ class RecommenderTest {
         Recommender recommender = new Recommender(generateTestMatrix(), false);
         List<Integer> recommendations = recommender.getRecommendations(5,Optional.empty());
         assertEquals(List.of(2,1), recommendations);
+        assertEquals(List.of(2), recommender.getRecommendations(5, Optional.of(1)));
+    }
+
+    @Test
+    void countShouldLimitRecommendations() throws Exception {
+        recommendationService.rebuildModel();
+        MvcResult result = mockMvc.perform(get("/users/" + 2 + "/recommendations?count=1")).andReturn();
+        List<Film> recommendations = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {});
+        assertEquals(1, recommendations.size());
+        assertEquals(1, recommendations.get(0).getId());
+
+        result = mockMvc.perform(get("/users/" + 2 + "/recommendations?count=-1")).andReturn();
+        assertEquals(400, result.getResponse().getStatus());
+    }
+
+    @Test
+    void similarityModelShouldRecommendAsExactRecommenderWhenAllNeighboursKept() {
+        Matrix matrix = generateTestMatrix();
+        Recommender recommender = new Recommender(matrix, false);
+        SimilarityModel model = recommender.buildSimilarityModel(matrix.getRowsCount());
+        for (int userId = 1; userId <= matrix.getColumnsCount(); userId++) {
+            assertEquals(recommender.getRecommendations(userId, Optional.empty()),
+                    model.getRecommendations(userId, Optional.empty()));
+        }
+        assertEquals(List.of(6, 3, 4, 2, 5), model.getNeighbours(1));
+        assertEquals(2, recommender.buildSimilarityModel(2).getNeighbours(1).size());
+    }
+
+    @Test
+    void newLikeShouldChangeRecommendationsWithoutRebuild() throws Exception {
+        recommendationService.rebuildModel();
+        mockMvc.perform(put("/films/1/like/4"));
+        mockMvc.perform(put("/films/2/like/4"));
+
+        MvcResult result = mockMvc.perform(get("/users/" + 4 + "/recommendations")).andReturn();
+        List<Film> recommendations = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {});
+        assertEquals(1, recommendations.size());
+        assertEquals(3, recommendations.get(0).getId());
+
+        mockMvc.perform(delete("/films/2/like/4"));
+        result = mockMvc.perform(get("/users/" + 4 + "/recommendations")).andReturn();
+        recommendations = mapper.readValue(result.getResponse().getContentAsString(), new TypeReference<>() {});
+        assertEquals(2, recommendations.size());
+    }
+
+    @Test
+    void likesChangedByFilmUpdateShouldReachRecommendations() {
+        recommendationService.rebuildModel();
+        for (int filmId : new int[]{1, 2}) {
+            Film film = filmService.getFilmById(filmId);
+            Set<Integer> likes = new HashSet<>(film.getWhoLikedUserIds());
+            likes.add(4);
+            film.setWhoLikedUserIds(likes);
+            filmService.update(film);
+        }
+        assertEquals(List.of(3), recommendationService.getRecommendations(4, Optional.empty()).stream()
+                .map(Film::getId)
+                .collect(Collectors.toList()));
+
+        Film film = filmService.getFilmById(2);
+        Set<Integer> likes = new HashSet<>(film.getWhoLikedUserIds());
+        likes.remove(4);
+        film.setWhoLikedUserIds(likes);
+        filmService.update(film);
+        assertEquals(2, recommendationService.getRecommendations(4, Optional.empty()).size());
+    }
+
+    @Test
+    void incrementalStatisticsShouldGiveSameSimilaritiesAsRecommender() {
+        Random random = new Random(42);
+        LikeStatistics statistics = new LikeStatistics();
+        Matrix likes = new Matrix();
+        Set<List<Integer>> liked = new HashSet<>();
+        for (int i = 0; i < 300; i++) {
+            int filmId = 1 + random.nextInt(15);
+            int userId = 1 + random.nextInt(20);
+            if (random.nextInt(4) == 0 && liked.remove(List.of(filmId, userId))) {
+                statistics.removeLike(filmId, userId);
+            } else if (liked.add(List.of(filmId, userId))) {
+                statistics.addLike(filmId, userId);
+            }
+        }
+        liked.forEach(like -> likes.writeValue(like.get(0), like.get(1), 1));
+        Recommender recommender = new Recommender(likes, true);
+        LikeStatistics seeded = LikeStatistics.of(likes);
+        for (int filmId1 = 1; filmId1 <= 15; filmId1++) {
+            for (int filmId2 = 1; filmId2 <= 15; filmId2++) {
+                double expected = recommender.findSimilarity(filmId1, filmId2);
+                assertEquals(expected, statistics.findSimilarity(filmId1, filmId2), 1e-9);
+                assertEquals(expected, seeded.findSimilarity(filmId1, filmId2), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void parallelBuildShouldFindSameNeighboursAsSequential() {
+        Random random = new Random(7);
+        Matrix likes = new Matrix();
+        for (int i = 0; i < 2000; i++) {
+            likes.writeValue(1 + random.nextInt(120), 1 + random.nextInt(80), 1);
+        }
+        Recommender recommender = new Recommender(likes, true);
+        SimilarityModel sequential = recommender.buildSimilarityModel(10);
+        ForkJoinPool pool = new ForkJoinPool(5);
+        try {
+            SimilarityModel parallel = recommender.buildSimilarityModel(10, pool);
+            for (int filmId = 1; filmId <= 120; filmId++) {
+                assertEquals(sequential.getNeighbours(filmId), parallel.getNeighbours(filmId));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void approximateModelShouldFindNeighboursOfSimilarFilms() {
+        Random random = new Random(11);
+        Matrix likes = new Matrix();
+        for (int filmId = 1; filmId <= 60; filmId++) {
+            int group = (filmId - 1) / 10;
+            for (int userId = group * 20 + 1; userId <= group * 20 + 20; userId++) {
+                if (random.nextInt(10) < 8) {
+                    likes.writeValue(filmId, userId, 1);
+                }
+            }
+        }
+        Recommender recommender = new Recommender(likes, true);
+        MinHashIndex index = new MinHashIndex(likes, 20, 3, 1);
+        SimilarityModel approximate = recommender.buildSimilarityModel(5, index);
+
+        assertEquals(0, index.estimateSimilarity(0, 59));
+        assertEquals(1, recommender.measureRecall(recommender.buildSimilarityModel(5), 5, 60));
+        assertTrue(recommender.measureRecall(approximate, 5, 60) > 0.9);
+        for (int other : approximate.getNeighbours(1)) {
+            assertTrue(other <= 10);
+        }
+    }
+
+    @Test
+    void factorModelShouldRecommendFilmsOfUserGroupAndSurviveSaving(@TempDir Path directory) throws IOException {
+        Matrix likes = new Matrix();
+        for (int userId = 1; userId <= 20; userId++) {
+            int firstFilm = userId <= 10 ? 1 : 11;
+            for (int filmId = firstFilm; filmId < firstFilm + 10; filmId++) {
+                if ((filmId + userId) % 3 != 0) {
+                    likes.writeValue(filmId, userId, 1);
+                }
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            FactorModel model = new AlsTrainer(8, 10, 0.1, 40, 1).train(likes, pool);
+            Path file = directory.resolve("factors.bin");
+            model.write(file);
+            FactorModel loaded = FactorModel.map(file);
+
+            List<Integer> recommendations = loaded.getRecommendations(1, new int[] {2, 3, 5, 6, 8, 9}, Optional.of(4));
+            assertEquals(model.getRecommendations(1, new int[] {2, 3, 5, 6, 8, 9}, Optional.of(4)), recommendations);
+            assertEquals(Set.of(1, 4, 7, 10), new HashSet<>(recommendations));
+            assertTrue(loaded.getRecommendations(WRONG_ID, new int[0], Optional.empty()).isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void mappedSnapshotShouldKeepNeighboursOfModel(@TempDir Path directory) throws IOException {
+        Matrix matrix = generateTestMatrix();
+        SimilarityModel model = new Recommender(matrix, false).buildSimilarityModel(3);
+        Path file = directory.resolve("recommendations.bin");
+        NeighbourSnapshot.write(model, 7, file);
+        NeighbourSnapshot snapshot = NeighbourSnapshot.map(file);
+
+        assertEquals(7, snapshot.getVersion());
+        assertEquals(6, snapshot.getFilmsCount());
+        for (int filmId = 1; filmId <= 6; filmId++) {
+            assertEquals(model.getNeighbours(filmId),
+                    Arrays.stream(snapshot.getNeighbours(filmId)).boxed().collect(Collectors.toList()));
+        }
+        assertEquals(0, snapshot.getNeighbours(WRONG_ID).length);
+    }
+
+    @Test
+    void sparseMatrixShouldKeepOnlyWrittenValues() {
+        Matrix matrix = generateTestMatrix();
+        matrix.writeValue(1, 1, Optional.of((double) 2));
+
+        assertEquals(35, matrix.getValuesCount());
+        assertEquals(OptionalDouble.of(2), matrix.getValue(1, 1));
+        assertEquals(OptionalDouble.empty(), matrix.getValue(1, 2));
+        assertEquals(OptionalDouble.empty(), matrix.getValue(WRONG_ID, 1));
+        assertEquals(6, matrix.getRowsCount());
+        assertEquals(12, matrix.getColumnsCount());
     }
 
     private Matrix generateTestMatrix() {
@@ -1,12 +1,14 @@
 package ru.yandex.practicum.filmorate;
 
 import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.jdbc.Sql;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.user.FriendIndex;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
 import java.time.LocalDate;
@@ -26,6 +28,12 @@ class UserDbStorageTest {
     private static final int EXPECTED_USERS_COUNT = 5;
     private static final LocalDate BIRTHDAY = LocalDate.of(1989, 5, 1);
     private final UserDbStorage userDbStorage;
+    private final FriendIndex friendIndex;
+
+    @BeforeEach
+    void resetFriendIndex() {
+        friendIndex.reload();
+    }
 
     @Test
     void testFindUserById() {
@@ -130,4 +138,31 @@ class UserDbStorageTest {
 
         assertThat(friends).isEmpty();
     }
+
+    @Test
+    void commonFriendsShouldComeFromFriendIndex() {
+        assertThat(friendIndex.getFriends(1)).isEmpty();
+
+        userDbStorage.addFriend(1, 3);
+        userDbStorage.addFriend(1, 5);
+        userDbStorage.addFriend(1, 4);
+        userDbStorage.addFriend(2, 5);
+        userDbStorage.addFriend(2, 3);
+
+        assertThat(userDbStorage.findCommonFriendsByIds(1, 2))
+                .extracting(User::getId)
+                .containsExactly(3, 5);
+        assertThat(userDbStorage.findById(1).orElseThrow().getFriendIds()).containsExactlyInAnyOrder(3, 4, 5);
+
+        assertThat(friendIndex.getFriends(1)).containsExactly(3, 4, 5);
+
+        userDbStorage.removeFriend(2, 3);
+        userDbStorage.deleteById(4);
+
+        assertThat(userDbStorage.findCommonFriendsByIds(1, 2))
+                .extracting(User::getId)
+                .containsExactly(5);
+        assertThat(friendIndex.getFriends(1)).containsExactly(3, 5);
+        assertThat(friendIndex.getFriends(2)).containsExactly(5);
+    }
 }
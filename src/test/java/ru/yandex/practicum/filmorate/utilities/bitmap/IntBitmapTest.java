@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.utilities.bitmap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IntBitmapTest {
+
+    @Test
+    void bitmapShouldKeepValuesOfArrayAndBitsetContainers() {
+        IntBitmap evens = new IntBitmap();
+        IntBitmap triples = new IntBitmap();
+        for (int value = 0; value < 200_000; value++) {
+            if (value % 2 == 0) {
+                evens.add(value);
+            }
+            if (value % 3 == 0) {
+                triples.add(value);
+            }
+        }
+        triples.add(1 << 20);
+
+        assertEquals(100_000, evens.cardinality());
+        assertEquals(33_334, evens.andCardinality(triples));
+        assertThat(evens.and(triples).toArray()).startsWith(0, 6, 12).endsWith(199_998);
+        assertThat(triples.contains(1 << 20)).isTrue();
+        for (int value = 0; value < 200_000; value += 2) {
+            evens.remove(value);
+        }
+        assertThat(evens.isEmpty()).isTrue();
+        assertThat(evens.add(5)).isTrue();
+        assertThat(evens.add(5)).isFalse();
+    }
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.utilities.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SuggestionTrieTest {
+    private final SuggestionTrie<String> trie = SuggestionTrie.<String>builder(3)
+            .add("Star Wars", "wars", 10)
+            .add("Star Trek", "trek", 30)
+            .add("Stargate", "gate", 20)
+            .add("Jaws", "jaws", 5)
+            .add("jaws", "jaws 2", 7)
+            .build();
+
+    @Test
+    void completeShouldReturnHeaviestKeysWithPrefix() {
+        assertThat(trie.complete("st", 10)).containsExactly("trek", "gate", "wars");
+        assertThat(trie.complete("STAR W", 10)).containsExactly("wars");
+        assertThat(trie.complete("star", 2)).containsExactly("trek", "gate");
+        assertThat(trie.complete("", 1)).containsExactly("trek");
+    }
+
+    @Test
+    void completeShouldKeepAllValuesOfSameKey() {
+        assertThat(trie.complete("JA", 10)).containsExactly("jaws 2", "jaws");
+        assertEquals(5, trie.size());
+    }
+
+    @Test
+    void completeShouldReturnNothingForUnknownPrefix() {
+        assertThat(trie.complete("x", 10)).isEmpty();
+        assertThat(trie.complete("star warsx", 10)).isEmpty();
+        assertThat(trie.complete("stb", 10)).isEmpty();
+        assertThat(trie.complete("st", 0)).isEmpty();
+        assertThat(SuggestionTrie.<String>builder(3).build().complete("a", 10)).isEmpty();
+    }
+
+    @Test
+    void completeShouldKeepAtMostMaxCompletionsPerNode() {
+        SuggestionTrie<Integer> small = SuggestionTrie.<Integer>builder(2)
+                .add("aa", 1, 1)
+                .add("ab", 2, 3)
+                .add("ac", 3, 2)
+                .build();
+        assertThat(small.complete("a", 10)).containsExactly(2, 3);
+        assertThat(small.complete("aa", 10)).containsExactly(1);
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.utilities.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TrigramIndexTest {
+    private final TrigramIndex index = new TrigramIndex();
+
+    @BeforeEach
+    void setUp() {
+        index.put(1, "Star Wars");
+        index.put(2, "Star Trek");
+        index.put(3, "Jaws");
+    }
+
+    @Test
+    void findShouldReturnTextsContainingQueryIgnoringCase() {
+        assertThat(index.find("STAR")).containsExactly(1, 2);
+        assertThat(index.find("wars")).containsExactly(1);
+        assertThat(index.find("aws")).containsExactly(3);
+        assertThat(index.find("tar tr")).containsExactly(2);
+        assertThat(index.find("xyz")).isEmpty();
+    }
+
+    @Test
+    void findShouldCheckEveryTextForQueryShorterThanTrigram() {
+        assertThat(index.find("ar")).containsExactly(1, 2);
+        assertThat(index.find("J")).containsExactly(3);
+        assertThat(index.find("")).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void putAndRemoveShouldReplaceTrigramsOfText() {
+        index.put(1, "Alien");
+        assertThat(index.find("star")).containsExactly(2);
+        assertThat(index.find("lie")).containsExactly(1);
+        assertEquals("alien", index.getText(1));
+
+        index.remove(2);
+        assertThat(index.find("star")).isEmpty();
+        assertNull(index.getText(2));
+
+        index.clear();
+        assertThat(index.find("a")).isEmpty();
+    }
+
+    @Test
+    void matchShouldTellHowTextContainsQuery() {
+        assertEquals(Match.EXACT, index.match(3, "JAWS"));
+        assertEquals(Match.PREFIX, index.match(3, "ja"));
+        assertEquals(Match.SUBSTRING, index.match(3, "aw"));
+        assertNull(index.match(3, "star"));
+        assertNull(index.match(9, "a"));
+    }
+}
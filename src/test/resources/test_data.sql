@@ -56,3 +56,5 @@ INSERT INTO FILM_DIRECTOR (DIRECTOR_ID, FILM_ID)
     VALUES (SELECT ID FROM DIRECTORS WHERE name = 'Lucas', SELECT ID FROM FILMS WHERE name = 'Jaws');
 INSERT INTO FILM_DIRECTOR (DIRECTOR_ID, FILM_ID)
 VALUES (SELECT ID FROM DIRECTORS WHERE name = 'Coppola', SELECT ID FROM FILMS WHERE name = 'Snatch');
+
+UPDATE FILMS SET LIKES_COUNT = (SELECT COUNT(*) FROM FILM_LIKES WHERE FILM_ID = FILMS.ID);